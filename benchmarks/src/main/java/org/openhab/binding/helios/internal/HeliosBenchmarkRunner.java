@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the Helios benchmarks with the gc profiler, so the allocation rate is reported along with the
+ * throughput. Any JMH command line options (e.g. a benchmark name pattern) are passed on.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosBenchmarkRunner {
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmdOptions = new CommandLineOptions(args);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(cmdOptions);
+		if (cmdOptions.getIncludes().isEmpty()) {
+			options.include("org\\.openhab\\.binding\\.helios\\..*Benchmark.*");
+		}
+		options.addProfiler(GCProfiler.class);
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+
+/**
+ * Benchmarks encoding requests and decoding responses of the Helios modbus.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class HeliosCodecBenchmark {
+
+	private HeliosVariable temperature;
+
+	private HeliosVariable fanStage;
+
+	private HeliosVariable voltage;
+
+	private Register[] temperatureResponse;
+
+	private Register[] fanStageResponse;
+
+	private Register[] stringResponse;
+
+	private final HeliosValue value = new HeliosValue();
+
+	private HeliosValue temperatureValue;
+
+	private HeliosValue fanStageValue;
+
+	private HeliosValue stringValue;
+
+	private List<Class<? extends State>> numberTypes;
+
+	private List<Class<? extends State>> switchTypes;
+
+	@Setup
+	public void setup() {
+		HeliosVariableMap vMap = HeliosVariableMap.getInstance();
+		this.temperature = vMap.getVariable("temperature_supply_air");
+		this.fanStage = vMap.getVariable("fan_stage");
+		this.voltage = vMap.getVariable("volt_fan_s1_ea");
+		this.temperatureResponse = response("v00105=21.5", this.temperature.getCount());
+		this.fanStageResponse = response("v00102=3", vMap.getVariable("fan_stage").getCount());
+		this.stringResponse = response("v00304=KWL 340 W", vMap.getVariable("prod_code").getCount());
+		this.temperatureValue = decoded(this.temperatureResponse, HeliosVariable.TYPE_INTEGER);
+		this.fanStageValue = decoded(this.fanStageResponse, HeliosVariable.TYPE_INTEGER);
+		this.stringValue = decoded(this.stringResponse, HeliosVariable.TYPE_STRING);
+		List<Class<? extends State>> n = Arrays.<Class<? extends State>>asList(DecimalType.class);
+		this.numberTypes = n;
+		List<Class<? extends State>> s = Arrays.<Class<? extends State>>asList(OnOffType.class);
+		this.switchTypes = s;
+	}
+
+	/**
+	 * Creates the registers the device would answer with (padded with 0x00)
+	 */
+	private static Register[] response(String text, int count) {
+		byte[] b = Arrays.copyOf(HeliosCommunicator.preparePayload(text), count * 2);
+		Register[] r = new Register[count];
+		for (int i = 0; i < count; i++) r[i] = new SimpleRegister(b[2 * i], b[2 * i + 1]);
+		return r;
+	}
+
+	private static HeliosValue decoded(Register[] registers, int type) {
+		HeliosValue v = new HeliosValue();
+		v.decode(registers, type);
+		return v;
+	}
+
+	@Benchmark
+	public byte[] preparePayload() {
+		return HeliosCommunicator.preparePayload("v00102=3");
+	}
+
+	@Benchmark
+	public boolean validateCommandInteger() {
+		return this.value.parse("3", this.fanStage.getType()) && this.fanStage.accepts(this.value);
+	}
+
+	@Benchmark
+	public boolean validateCommandFixedPoint() {
+		return this.value.parse("7.25", this.voltage.getType()) && this.voltage.accepts(this.value);
+	}
+
+	@Benchmark
+	public boolean decodeResponseInteger() {
+		return this.value.decode(this.fanStageResponse, HeliosVariable.TYPE_INTEGER);
+	}
+
+	@Benchmark
+	public boolean decodeResponseFloat() {
+		return this.value.decode(this.temperatureResponse, HeliosVariable.TYPE_INTEGER);
+	}
+
+	@Benchmark
+	public boolean decodeResponseString() {
+		return this.value.decode(this.stringResponse, HeliosVariable.TYPE_STRING);
+	}
+
+	@Benchmark
+	public String getVariableString() {
+		return this.temperature.getVariableString();
+	}
+
+	@Benchmark
+	public Type toTypeNumber() {
+		return HeliosBinding.toType(this.temperatureValue, this.numberTypes);
+	}
+
+	@Benchmark
+	public Type toTypeSwitch() {
+		return HeliosBinding.toType(this.fanStageValue, this.switchTypes);
+	}
+
+	@Benchmark
+	public Type toTypeString() {
+		return HeliosBinding.toType(this.stringValue, this.numberTypes);
+	}
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading a batch of variables with strict request/response and with pipelined transactions
+ * against the in-process simulator, with and without network delay - variable by variable and as a reused
+ * snapshot.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeliosPipelineBenchmark {
+
+	private static final String[] NAMES = { "temperature_supply_air", "temperature_outside_air",
+			"temperature_extract_air", "temperature_outgoing_air", "fan_stage", "supply_air_rpm", "extract_air_rpm",
+			"filter_change_remaining_time" };
+
+	@Param({ "1", "8" })
+	private int pipeline;
+
+	@Param({ "0", "5" })
+	private long linkDelay;
+
+	private HeliosSimulator simulator;
+
+	private HeliosNioEventLoop eventLoop;
+
+	private HeliosCommunicator communicator;
+
+	private final HeliosValue[] values = new HeliosValue[NAMES.length];
+
+	private final List<String> names = Arrays.asList(NAMES);
+
+	private final HeliosSnapshot snapshot = new HeliosSnapshot(NAMES.length);
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.simulator = new HeliosSimulator();
+		int port = this.simulator.start(0);
+		this.simulator.setLinkDelay(this.linkDelay);
+		this.eventLoop = new HeliosNioEventLoop("Helios Event Loop");
+		this.eventLoop.start();
+		HeliosNioTransport t = new HeliosNioTransport("127.0.0.1", port, this.eventLoop);
+		t.setPipelineDepth(this.pipeline);
+		this.communicator = new HeliosCommunicator(t, HeliosCommunicator.DEFAULT_UNIT,
+				HeliosCommunicator.DEFAULT_START_ADDRESS);
+		this.communicator.probePipelining();
+		for (int i = 0; i < this.values.length; i++) this.values[i] = new HeliosValue();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.communicator.close();
+		this.eventLoop.shutdown();
+		this.simulator.stop();
+	}
+
+	@Benchmark
+	public HeliosValue[] getValueEach() throws HeliosException {
+		for (int i = 0; i < NAMES.length; i++) {
+			this.communicator.getValue(NAMES[i], this.values[i]);
+		}
+		return this.values;
+	}
+
+	@Benchmark
+	public HeliosSnapshot readAll() {
+		return this.communicator.readAll(this.names, this.snapshot, null);
+	}
+}
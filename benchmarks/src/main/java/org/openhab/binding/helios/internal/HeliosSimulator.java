@@ -0,0 +1,534 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class emulates an easyControls device as a local Modbus TCP server, so the binding can be tested and
+ * benchmarked without a ventilation unit. Like the real device it expects the variable name ('vXXXXX') or an
+ * assignment ('vXXXXX=value') to be written to the start address and answers a read of the start address with
+ * 'vXXXXX=value' padded with 0x00. The variables are taken from {@link HeliosVariableMap}.
+ * <p>
+ * Latency, jitter and errors can be configured to emulate slow or unreliable devices. The link delay emulates
+ * a high-latency network (responses are delayed without blocking the following requests), optionally the
+ * simulator drops requests received while responses are still in transit like firmware which does not
+ * tolerate pipelined requests. The simulator is part of the benchmark module, not of the bundle - it is used by
+ * the benchmarks and tests and can be run stand-alone with the port as the only (optional) argument.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosSimulator {
+
+	/**
+	 * Modbus function code 'read holding registers'
+	 */
+	public static final int FC_READ_HOLDING_REGISTERS = 0x03;
+
+	/**
+	 * Modbus function code 'write multiple registers'
+	 */
+	public static final int FC_WRITE_MULTIPLE_REGISTERS = 0x10;
+
+	/**
+	 * Modbus exception code 'illegal function'
+	 */
+	public static final int EX_ILLEGAL_FUNCTION = 0x01;
+
+	/**
+	 * Modbus exception code 'illegal data address'
+	 */
+	public static final int EX_ILLEGAL_DATA_ADDRESS = 0x02;
+
+	/**
+	 * Modbus exception code 'illegal data value'
+	 */
+	public static final int EX_ILLEGAL_DATA_VALUE = 0x03;
+
+	/**
+	 * Modbus exception code 'slave device failure'
+	 */
+	public static final int EX_SLAVE_DEVICE_FAILURE = 0x04;
+
+	/**
+	 * The variable catalog
+	 */
+	private final HeliosVariableMap vMap = HeliosVariableMap.getInstance();
+
+	/**
+	 * The current values indexed by variable number
+	 */
+	private final Map<Integer, String> values = new ConcurrentHashMap<Integer, String>();
+
+	/**
+	 * The start address of the variable registers
+	 */
+	private final int startAddress;
+
+	/**
+	 * The selected variable (-1 if none) - like on the real device the selection is shared by all connections
+	 */
+	private volatile int selected = -1;
+
+	/**
+	 * Fixed delay of each response (ms)
+	 */
+	private volatile long latency = 0;
+
+	/**
+	 * Maximum random delay added to the latency (ms)
+	 */
+	private volatile long jitter = 0;
+
+	/**
+	 * Delay of each response on the network (ms)
+	 */
+	private volatile long linkDelay = 0;
+
+	/**
+	 * Flag indicating requests received while responses are still in transit are dropped
+	 */
+	private volatile boolean dropPipelined = false;
+
+	/**
+	 * Probability of answering a request with a 'slave device failure' exception
+	 */
+	private volatile double errorRate = 0;
+
+	/**
+	 * Probability of dropping the connection instead of answering a request
+	 */
+	private volatile double disconnectRate = 0;
+
+	/**
+	 * Random generator for jitter and error injection
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * Number of requests received
+	 */
+	private final AtomicLong requestCount = new AtomicLong();
+
+	/**
+	 * Number of connections accepted
+	 */
+	private final AtomicLong connectionCount = new AtomicLong();
+
+	/**
+	 * The server socket (or <tt>null</tt> if not running)
+	 */
+	private volatile ServerSocket serverSocket;
+
+	/**
+	 * The open client connections
+	 */
+	private final Set<Socket> clients = new CopyOnWriteArraySet<Socket>();
+
+	/**
+	 * The executor sending delayed responses (or <tt>null</tt> if not running)
+	 */
+	private volatile ScheduledExecutorService link;
+
+	/**
+	 * Constructor using the default start address
+	 */
+	public HeliosSimulator() {
+		this(HeliosCommunicator.DEFAULT_START_ADDRESS);
+	}
+
+	/**
+	 * Constructor to set the start address
+	 * @param startAddress The start address of the variable registers
+	 */
+	public HeliosSimulator(int startAddress) {
+		this.startAddress = startAddress;
+		for (String name : this.vMap.getNames()) {
+			HeliosVariable v = this.vMap.getVariable(name);
+			this.values.put(v.getVariable(), defaultValue(v));
+		}
+	}
+
+	/**
+	 * Starts the simulator on the loopback interface
+	 * @param port The port (0 to use any free port)
+	 * @return The port the simulator is listening on
+	 * @throws IOException
+	 */
+	public synchronized int start(int port) throws IOException {
+		if (this.serverSocket != null) return this.serverSocket.getLocalPort();
+		final ServerSocket ss = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+		this.serverSocket = ss;
+		this.link = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Helios Simulator Link " + ss.getLocalPort());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		Thread acceptor = new Thread("Helios Simulator " + ss.getLocalPort()) {
+			public void run() {
+				while (!ss.isClosed()) {
+					try {
+						final Socket s = ss.accept();
+						s.setTcpNoDelay(true);
+						clients.add(s);
+						connectionCount.incrementAndGet();
+						Thread handler = new Thread("Helios Simulator Connection " + s.getPort()) {
+							public void run() {
+								serve(s);
+							}
+						};
+						handler.setDaemon(true);
+						handler.start();
+					} catch (IOException e) {
+						// socket closed
+					}
+				}
+			}
+		};
+		acceptor.setDaemon(true);
+		acceptor.start();
+		return ss.getLocalPort();
+	}
+
+	/**
+	 * Stops the simulator and closes all connections
+	 */
+	public synchronized void stop() {
+		if (this.serverSocket != null) {
+			closeQuietly(this.serverSocket);
+			this.serverSocket = null;
+		}
+		for (Socket s : this.clients) closeQuietly(s);
+		this.clients.clear();
+		if (this.link != null) {
+			this.link.shutdownNow();
+			this.link = null;
+		}
+	}
+
+	/**
+	 * Returns the port the simulator is listening on
+	 * @return The port or -1 if not running
+	 */
+	public int getPort() {
+		ServerSocket ss = this.serverSocket;
+		return ss == null ? -1 : ss.getLocalPort();
+	}
+
+	/**
+	 * Sets the value of a variable
+	 * @param variableName The variable name
+	 * @param value The new value
+	 */
+	public void setValue(String variableName, String value) {
+		HeliosVariable v = this.vMap.getVariable(variableName);
+		if (v == null) throw new IllegalArgumentException("Unknown variable " + variableName);
+		this.values.put(v.getVariable(), value);
+	}
+
+	/**
+	 * Returns the value of a variable
+	 * @param variableName The variable name
+	 * @return The current value
+	 */
+	public String getValue(String variableName) {
+		HeliosVariable v = this.vMap.getVariable(variableName);
+		if (v == null) throw new IllegalArgumentException("Unknown variable " + variableName);
+		return this.values.get(v.getVariable());
+	}
+
+	/**
+	 * Sets the response delay
+	 * @param latency Fixed delay of each response (ms)
+	 * @param jitter Maximum random delay added to the latency (ms)
+	 */
+	public void setLatency(long latency, long jitter) {
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Sets the network delay of the responses - unlike the latency it does not delay the processing of the
+	 * following requests
+	 * @param linkDelay The delay (ms)
+	 */
+	public void setLinkDelay(long linkDelay) {
+		this.linkDelay = linkDelay;
+	}
+
+	/**
+	 * Sets whether requests received while responses are still in transit are dropped (like firmware which
+	 * does not tolerate pipelined requests)
+	 * @param dropPipelined <tt>true</tt> to drop pipelined requests
+	 */
+	public void setDropPipelined(boolean dropPipelined) {
+		this.dropPipelined = dropPipelined;
+	}
+
+	/**
+	 * Sets the probability of answering a request with a 'slave device failure' exception
+	 * @param errorRate The probability (0..1)
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	/**
+	 * Sets the probability of dropping the connection instead of answering a request
+	 * @param disconnectRate The probability (0..1)
+	 */
+	public void setDisconnectRate(double disconnectRate) {
+		this.disconnectRate = disconnectRate;
+	}
+
+	/**
+	 * Returns the number of requests received
+	 * @return The request count
+	 */
+	public long getRequestCount() {
+		return this.requestCount.get();
+	}
+
+	/**
+	 * Returns the number of connections accepted
+	 * @return The connection count
+	 */
+	public long getConnectionCount() {
+		return this.connectionCount.get();
+	}
+
+	/**
+	 * Serves the requests of one client connection until it is closed
+	 * @param s The client socket
+	 */
+	private void serve(Socket s) {
+		try {
+			DataInputStream in = new DataInputStream(s.getInputStream());
+			final DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			final AtomicInteger inTransit = new AtomicInteger();
+			while (true) {
+				// MBAP header
+				int transactionId = in.readUnsignedShort();
+				int protocolId = in.readUnsignedShort();
+				int length = in.readUnsignedShort();
+				if ((protocolId != 0) || (length < 2) || (length > 260)) break;
+				int unit = in.readUnsignedByte();
+				byte[] pdu = new byte[length - 1];
+				in.readFully(pdu);
+				this.requestCount.incrementAndGet();
+				if (this.dropPipelined && (inTransit.get() > 0)) continue;
+
+				this.delay();
+				double r;
+				synchronized (this.random) {
+					r = this.random.nextDouble();
+				}
+				if (r < this.disconnectRate) break;
+
+				byte[] response = r < this.disconnectRate + this.errorRate
+						? exception(pdu[0], EX_SLAVE_DEVICE_FAILURE) : this.process(pdu);
+				// send the frame in one piece like the real device does (j2mod doesn't cope with fragmented frames)
+				final byte[] frame = new byte[7 + response.length];
+				frame[0] = (byte) (transactionId >> 8);
+				frame[1] = (byte) transactionId;
+				frame[4] = (byte) ((response.length + 1) >> 8);
+				frame[5] = (byte) (response.length + 1);
+				frame[6] = (byte) unit;
+				System.arraycopy(response, 0, frame, 7, response.length);
+				ScheduledExecutorService link = this.link;
+				if ((this.linkDelay > 0) && (link != null)) {
+					inTransit.incrementAndGet();
+					link.schedule(new Runnable() {
+						public void run() {
+							// the client may send the next request as soon as it sees the response
+							inTransit.decrementAndGet();
+							try {
+								synchronized (out) {
+									out.write(frame);
+									out.flush();
+								}
+							} catch (IOException e) {
+								// connection closed
+							}
+						}
+					}, this.linkDelay, TimeUnit.MILLISECONDS);
+				} else {
+					synchronized (out) {
+						out.write(frame);
+						out.flush();
+					}
+				}
+			}
+		} catch (EOFException e) {
+			// client closed the connection
+		} catch (SocketException e) {
+			// connection closed
+		} catch (IOException e) {
+			// connection broken
+		} finally {
+			this.clients.remove(s);
+			closeQuietly(s);
+		}
+	}
+
+	/**
+	 * Processes a request PDU
+	 * @param pdu The request PDU
+	 * @return The response PDU
+	 */
+	byte[] process(byte[] pdu) {
+		int fc = pdu[0] & 0xff;
+		if (pdu.length < 5) return exception(fc, EX_ILLEGAL_DATA_VALUE);
+		int address = ((pdu[1] & 0xff) << 8) | (pdu[2] & 0xff);
+		int quantity = ((pdu[3] & 0xff) << 8) | (pdu[4] & 0xff);
+		if (address != this.startAddress) return exception(fc, EX_ILLEGAL_DATA_ADDRESS);
+
+		switch (fc) {
+			case FC_WRITE_MULTIPLE_REGISTERS:
+				if ((pdu.length < 6) || (pdu.length - 6 != quantity * 2) || ((pdu[5] & 0xff) != quantity * 2)) {
+					return exception(fc, EX_ILLEGAL_DATA_VALUE);
+				}
+				if (!this.write(pdu, 6, quantity * 2)) return exception(fc, EX_ILLEGAL_DATA_VALUE);
+				return new byte[] { pdu[0], pdu[1], pdu[2], pdu[3], pdu[4] };
+
+			case FC_READ_HOLDING_REGISTERS:
+				if ((quantity < 1) || (quantity > 125)) return exception(fc, EX_ILLEGAL_DATA_VALUE);
+				int v = this.selected;
+				if (v < 0) return exception(fc, EX_ILLEGAL_DATA_ADDRESS);
+				byte[] text = (this.vMap.getVariable(v).getVariableString() + "=" + this.values.get(v)).getBytes();
+				byte[] response = new byte[2 + quantity * 2]; // padded with 0x00
+				response[0] = (byte) fc;
+				response[1] = (byte) (quantity * 2);
+				System.arraycopy(text, 0, response, 2, Math.min(text.length, quantity * 2));
+				return response;
+
+			default:
+				return exception(fc, EX_ILLEGAL_FUNCTION);
+		}
+	}
+
+	/**
+	 * Processes the payload of a write request, i.e. selects a variable or assigns a value
+	 * @param b The request bytes
+	 * @param off The offset of the payload
+	 * @param len The length of the payload
+	 * @return <tt>false</tt> if the payload is invalid
+	 */
+	private boolean write(byte[] b, int off, int len) {
+		int end = off;
+		while ((end < off + len) && (b[end] != 0x00)) end++;
+		String payload = new String(b, off, end - off);
+		int eq = payload.indexOf('=');
+		String name = eq < 0 ? payload : payload.substring(0, eq);
+		if ((name.length() != 6) || (name.charAt(0) != 'v')) return false;
+		int number;
+		try {
+			number = Integer.parseInt(name.substring(1));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		HeliosVariable v = this.vMap.getVariable(number);
+		if (v == null) return false;
+		if (eq >= 0) {
+			if (v.getAccess() == HeliosVariable.ACCESS_R) return false;
+			this.values.put(number, payload.substring(eq + 1));
+		}
+		this.selected = number;
+		return true;
+	}
+
+	/**
+	 * Waits for the configured latency plus jitter
+	 */
+	private void delay() {
+		long d = this.latency;
+		if (this.jitter > 0) {
+			synchronized (this.random) {
+				d += (long) (this.random.nextDouble() * this.jitter);
+			}
+		}
+		if (d > 0) {
+			try {
+				Thread.sleep(d);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Creates an exception response
+	 * @param fc The function code of the request
+	 * @param code The exception code
+	 * @return The response PDU
+	 */
+	private static byte[] exception(int fc, int code) {
+		return new byte[] { (byte) (fc | 0x80), (byte) code };
+	}
+
+	/**
+	 * Returns the initial value of a variable
+	 * @param v The variable
+	 * @return The minimum value for numeric variables with a range, '0' for other numeric variables and
+	 * a placeholder for strings
+	 */
+	private static String defaultValue(HeliosVariable v) {
+		switch (v.getType()) {
+			case HeliosVariable.TYPE_STRING:
+				return "-";
+			default:
+				return v.getMinString() == null ? "0" : v.getMinString();
+		}
+	}
+
+	/**
+	 * Closes a socket ignoring any errors
+	 */
+	private static void closeQuietly(Closeable socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Runs the simulator stand-alone
+	 * @param args The port (optional, defaults to 5020)
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		HeliosSimulator simulator = new HeliosSimulator();
+		int port = simulator.start(args.length > 0 ? Integer.parseInt(args[0]) : 5020);
+		System.out.println("Helios simulator listening on 127.0.0.1:" + port);
+		Thread.currentThread().join();
+	}
+}
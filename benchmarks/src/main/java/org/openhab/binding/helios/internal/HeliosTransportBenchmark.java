@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks complete variable reads (select and read transaction) against the in-process simulator,
+ * comparing the j2mod and the NIO transport.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeliosTransportBenchmark {
+
+	@Param({ HeliosTransport.J2MOD, HeliosTransport.NIO })
+	private String transport;
+
+	private HeliosSimulator simulator;
+
+	private HeliosNioEventLoop eventLoop;
+
+	private HeliosCommunicator communicator;
+
+	private final HeliosValue value = new HeliosValue();
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this.simulator = new HeliosSimulator();
+		int port = this.simulator.start(0);
+		this.simulator.setValue("temperature_supply_air", "21.5");
+		HeliosTransport t;
+		if (HeliosTransport.NIO.equals(this.transport)) {
+			this.eventLoop = new HeliosNioEventLoop("Helios Event Loop");
+			this.eventLoop.start();
+			t = new HeliosNioTransport("127.0.0.1", port, this.eventLoop);
+		} else {
+			t = new HeliosJ2modTransport("127.0.0.1", port);
+		}
+		this.communicator = new HeliosCommunicator(t, HeliosCommunicator.DEFAULT_UNIT,
+				HeliosCommunicator.DEFAULT_START_ADDRESS);
+		this.communicator.connect();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.communicator.close();
+		if (this.eventLoop != null) this.eventLoop.shutdown();
+		this.simulator.stop();
+	}
+
+	@Benchmark
+	public HeliosValue getValue() throws HeliosException {
+		this.communicator.getValue("temperature_supply_air", this.value);
+		return this.value;
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks building the variable catalog and looking up variables.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeliosVariableMapBenchmark {
+
+	private final HeliosVariableMap vMap = HeliosVariableMap.getInstance();
+
+	private int next = 0;
+
+	private static final String[] NAMES = { "fan_stage", "temperature_supply_air", "party-mode_remaining_time",
+			"filter_change_remaining_time", "prod_code", "supply_air_rpm" };
+
+	private static final int[] NUMBERS = { 102, 105, 93, 1033, 304, 348 };
+
+	@Benchmark
+	public HeliosVariableMap construct() {
+		return new HeliosVariableMap();
+	}
+
+	@Benchmark
+	public HeliosVariable lookupByName() {
+		this.next = (this.next + 1) % NAMES.length;
+		return this.vMap.getVariable(NAMES[this.next]);
+	}
+
+	@Benchmark
+	public HeliosVariable lookupByNumber() {
+		this.next = (this.next + 1) % NUMBERS.length;
+		return this.vMap.getVariable(NUMBERS[this.next]);
+	}
+}
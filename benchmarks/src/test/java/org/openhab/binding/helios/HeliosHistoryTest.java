@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the ring buffer and the window queries of {@link HeliosHistory}
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosHistoryTest {
+
+	@Test
+	public void testWindow() {
+		HeliosHistory history = new HeliosHistory(3);
+		history.add(1000, 1);
+		history.add(2000, 2);
+		history.add(3000, 3);
+		history.add(4000, 4);
+		assertEquals(3, history.size());
+		assertEquals(2, history.getMinimum(10000, 4000), 0);
+		assertEquals(3.5, history.getAverage(1000, 4000), 0);
+		assertEquals(1, history.getRateOfChange(10000, 4000), 0);
+	}
+
+	@Test
+	public void testSamplesNewerThanNowAreIgnored() {
+		HeliosHistory history = new HeliosHistory(10);
+		history.add(1000, 1);
+		history.add(2000, 2);
+		history.add(3000, 30);
+		assertEquals(2, history.getMaximum(5000, 2000), 0);
+		assertEquals(1.5, history.getAverage(5000, 2000), 0);
+		assertEquals(1, history.getRateOfChange(5000, 2000), 0);
+		assertTrue(Double.isNaN(history.getMinimum(5000, 500)));
+	}
+
+	@Test
+	public void testTimestampsAreMonotonic() {
+		HeliosHistory history = new HeliosHistory(10);
+		history.add(5000, 1);
+		// the clock has been set back
+		history.add(1000, 2);
+		history.add(6000, 3);
+		assertEquals(6000, history.getLatestTimestamp());
+		long[] timestamps = new long[3];
+		history.getLast(3, timestamps, null);
+		assertEquals(5000, timestamps[1]);
+		assertEquals(2, history.getAverage(1000, 6000), 0);
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the states and the probe back-off of {@link HeliosCircuitBreaker}
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosCircuitBreakerTest {
+
+	@Test
+	public void testOpensAtThreshold() {
+		HeliosCircuitBreaker breaker = new HeliosCircuitBreaker(3);
+		assertFalse(breaker.recordFailure(0));
+		assertFalse(breaker.recordFailure(0));
+		assertTrue(breaker.recordFailure(0));
+		assertTrue(breaker.isOpen());
+		assertEquals(1, breaker.getOpenCount());
+		assertFalse(breaker.isAllowed(HeliosCircuitBreaker.MIN_PROBE_DELAY - 1));
+		assertTrue(breaker.isAllowed(HeliosCircuitBreaker.MIN_PROBE_DELAY));
+	}
+
+	@Test
+	public void testSuccessResetsFailures() {
+		HeliosCircuitBreaker breaker = new HeliosCircuitBreaker(2);
+		breaker.recordFailure(0);
+		assertFalse(breaker.recordSuccess());
+		assertFalse(breaker.recordFailure(0));
+		assertFalse(breaker.isOpen());
+	}
+
+	@Test
+	public void testProbeBackOff() {
+		HeliosCircuitBreaker breaker = new HeliosCircuitBreaker(1);
+		breaker.recordFailure(0);
+		long delay = HeliosCircuitBreaker.MIN_PROBE_DELAY;
+		while (delay < HeliosCircuitBreaker.MAX_PROBE_DELAY) {
+			assertEquals(delay, breaker.getProbeDelay());
+			breaker.recordFailure(0);
+			delay = Math.min(delay * 2, HeliosCircuitBreaker.MAX_PROBE_DELAY);
+		}
+		assertEquals(HeliosCircuitBreaker.MAX_PROBE_DELAY, breaker.getProbeDelay());
+		assertTrue(breaker.recordSuccess());
+		assertFalse(breaker.isOpen());
+		assertTrue(breaker.isAllowed(0));
+	}
+
+	@Test
+	public void testThresholdZeroNeverOpens() {
+		HeliosCircuitBreaker breaker = new HeliosCircuitBreaker(0);
+		for (int i = 0; i < 100; i++) {
+			assertFalse(breaker.recordFailure(0));
+		}
+		assertFalse(breaker.isOpen());
+	}
+}
@@ -0,0 +1,242 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Stress test of {@link HeliosCommunicator} against {@link HeliosSimulator}: several threads read, write and
+ * snapshot variables of one device in parallel. Like the real device the simulator shares the selected variable
+ * between all requests, so a transaction interleaved with another one returns the value of the wrong variable.
+ * Each read-only variable has a value of its own and each writable variable is written by one thread only, so
+ * every response can be checked against its request.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosCommunicatorStressTest {
+
+	/**
+	 * The number of transactions of each thread
+	 */
+	private static final int ITERATIONS = 300;
+
+	/**
+	 * The number of threads reading single variables, reading snapshots and writing variables
+	 */
+	private static final int READERS = 4;
+	private static final int SNAPSHOTS = 2;
+	private static final int WRITERS = 4;
+
+	private final HeliosVariableMap vMap = HeliosVariableMap.getInstance();
+
+	private HeliosSimulator simulator;
+
+	private HeliosNioEventLoop eventLoop;
+
+	private HeliosCommunicator heliosComm;
+
+	/**
+	 * The expected values of the read-only variables
+	 */
+	private final Map<String, String> expected = new HashMap<String, String>();
+
+	/**
+	 * The writable integer variables
+	 */
+	private final List<String> writable = new ArrayList<String>();
+
+	/**
+	 * The mismatches and errors found by the threads
+	 */
+	private final Queue<String> failures = new ConcurrentLinkedQueue<String>();
+
+	@Before
+	public void setUp() throws Exception {
+		this.simulator = new HeliosSimulator();
+		this.simulator.start(0);
+		// widen the window between selecting and reading a variable
+		this.simulator.setLatency(0, 1);
+		int value = 100;
+		for (String name : this.vMap.getNames()) {
+			HeliosVariable v = this.vMap.getVariable(name);
+			if (!(v instanceof HeliosIntegerVariable)) continue;
+			HeliosIntegerVariable iv = (HeliosIntegerVariable) v;
+			if ((v.getAccess() == HeliosVariable.ACCESS_R) && (v.getLength() >= 3) && (value < 1000)) {
+				// a distinct value for each read-only variable
+				this.simulator.setValue(name, String.valueOf(value));
+				this.expected.put(name, String.valueOf(value));
+				value++;
+			} else if ((v.getAccess() == HeliosVariable.ACCESS_RW) && iv.isBounded()
+					&& (iv.getMaxVal() > iv.getMinVal())) {
+				this.writable.add(name);
+			}
+		}
+		assertTrue("Too few read-only variables", this.expected.size() >= 10);
+		assertTrue("Too few writable variables", this.writable.size() >= WRITERS);
+	}
+
+	@After
+	public void tearDown() {
+		if (this.heliosComm != null) this.heliosComm.close();
+		if (this.eventLoop != null) this.eventLoop.shutdown();
+		this.simulator.stop();
+	}
+
+	@Test
+	public void testNioTransport() throws Exception {
+		this.stress(this.createNioTransport(1));
+	}
+
+	@Test
+	public void testNioTransportPipelined() throws Exception {
+		this.stress(this.createNioTransport(4));
+	}
+
+	@Test
+	public void testJ2modTransport() throws Exception {
+		this.stress(new HeliosJ2modTransport("127.0.0.1", this.simulator.getPort()));
+	}
+
+	private HeliosTransport createNioTransport(int pipelineDepth) throws Exception {
+		this.eventLoop = new HeliosNioEventLoop("Helios Test Event Loop");
+		this.eventLoop.start();
+		HeliosNioTransport transport = new HeliosNioTransport("127.0.0.1", this.simulator.getPort(), this.eventLoop);
+		transport.setPipelineDepth(pipelineDepth);
+		return transport;
+	}
+
+	/**
+	 * Runs the readers, snapshot readers and writers in parallel and checks all responses
+	 * @param transport The transport
+	 */
+	private void stress(HeliosTransport transport) throws Exception {
+		this.heliosComm = new HeliosCommunicator(transport, HeliosCommunicator.DEFAULT_UNIT,
+				HeliosCommunicator.DEFAULT_START_ADDRESS, this.vMap);
+		final List<String> readOnly = new ArrayList<String>(this.expected.keySet());
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(READERS + SNAPSHOTS + WRITERS);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < READERS; i++) {
+			final Random random = new Random(i);
+			threads.add(new Worker(start, done) {
+				void transaction() throws HeliosException {
+					String name = readOnly.get(random.nextInt(readOnly.size()));
+					check(name, expected.get(name), heliosComm.getValue(name));
+				}
+			});
+		}
+		for (int i = 0; i < SNAPSHOTS; i++) {
+			final Random random = new Random(100 + i);
+			final HeliosSnapshot snapshot = new HeliosSnapshot();
+			final HeliosSnapshot.Listener listener = new HeliosSnapshot.Listener() {
+				public boolean batchRead(HeliosSnapshot snapshot, int from, int to) {
+					// the listener must not block the transactions of the other threads
+					if (Thread.holdsLock(heliosComm)) failures.add("listener called while holding the lock");
+					return true;
+				}
+			};
+			threads.add(new Worker(start, done) {
+				void transaction() {
+					List<String> names = new ArrayList<String>();
+					for (int j = 0; j < 8; j++) {
+						names.add(readOnly.get(random.nextInt(readOnly.size())));
+					}
+					heliosComm.readAll(names, snapshot, listener);
+					for (int j = 0; j < snapshot.size(); j++) {
+						String name = snapshot.getName(j);
+						if (snapshot.getError(j) != null) {
+							failures.add(name + ": " + snapshot.getError(j).getMessage());
+						} else {
+							check(name, expected.get(name), snapshot.getValue(j).toString());
+						}
+					}
+				}
+			});
+		}
+		for (int i = 0; i < WRITERS; i++) {
+			final Random random = new Random(200 + i);
+			// each writer owns its variables
+			final List<String> owned = new ArrayList<String>();
+			for (int j = i; j < this.writable.size(); j += WRITERS) {
+				owned.add(this.writable.get(j));
+			}
+			threads.add(new Worker(start, done) {
+				void transaction() throws HeliosException {
+					String name = owned.get(random.nextInt(owned.size()));
+					HeliosIntegerVariable v = (HeliosIntegerVariable) vMap.getVariable(name);
+					String value = String.valueOf(v.getMinVal() + random.nextInt(v.getMaxVal() - v.getMinVal() + 1));
+					heliosComm.setValue(name, value);
+					check(name, value, heliosComm.getValue(name));
+				}
+			});
+		}
+		for (Thread t : threads) {
+			t.start();
+		}
+		start.countDown();
+		assertTrue("Stress test timed out", done.await(60, TimeUnit.SECONDS));
+		assertEquals("Cross-talk or errors: " + this.failures, 0, this.failures.size());
+	}
+
+	/**
+	 * Records a mismatch between the expected and the actual value of a variable
+	 */
+	private void check(String name, String expected, String actual) {
+		if (!expected.equals(actual)) {
+			this.failures.add(name + ": expected " + expected + " but read " + actual);
+		}
+	}
+
+	/**
+	 * A thread performing {@link #ITERATIONS} transactions
+	 */
+	private abstract class Worker extends Thread {
+
+		private final CountDownLatch start;
+		private final CountDownLatch done;
+
+		private Worker(CountDownLatch start, CountDownLatch done) {
+			this.start = start;
+			this.done = done;
+			this.setDaemon(true);
+		}
+
+		abstract void transaction() throws HeliosException;
+
+		@Override
+		public void run() {
+			try {
+				this.start.await();
+				for (int i = 0; i < ITERATIONS; i++) {
+					this.transaction();
+				}
+			} catch (Exception e) {
+				failures.add(this.getName() + ": " + e);
+			} finally {
+				this.done.countDown();
+			}
+		}
+	}
+}
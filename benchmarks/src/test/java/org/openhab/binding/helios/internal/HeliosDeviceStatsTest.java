@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the statistics names and the per-variable statistics of {@link HeliosDeviceStats}
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosDeviceStatsTest {
+
+	@Test
+	public void testStatisticNames() {
+		assertTrue(HeliosDeviceStats.isValidStatistic("cycle_p99_ms"));
+		assertTrue(HeliosDeviceStats.isValidStatistic("fan_stage.total_p99_ms"));
+		assertTrue(HeliosDeviceStats.isValidStatistic("connect_count"));
+		assertFalse(HeliosDeviceStats.isValidStatistic("fan_stage.cycle_p99_ms"));
+		assertFalse(HeliosDeviceStats.isValidStatistic(".total_p99_ms"));
+		assertFalse(HeliosDeviceStats.isValidStatistic("no_such_statistic"));
+	}
+
+	@Test
+	public void testStatisticsOfVariablesAreCheckedAgainstTheDeviceCatalog() {
+		HeliosVariableMap defaultCatalog = HeliosVariableMap.getInstance();
+		HeliosVariableMap testCatalog = new HeliosVariableMap("test");
+		// not part of the default catalog, but of the device's one
+		assertTrue(HeliosDeviceStats.isValidStatistic("test_only_variable.total_p99_ms"));
+		assertTrue(HeliosDeviceStats.isValidStatistic("test_only_variable.total_p99_ms", testCatalog));
+		assertFalse(HeliosDeviceStats.isValidStatistic("test_only_variable.total_p99_ms", defaultCatalog));
+		assertFalse(HeliosDeviceStats.isValidStatistic("supply_air_rpm.total_p99_ms", testCatalog));
+		assertTrue(HeliosDeviceStats.isValidStatistic("cycle_p99_ms", testCatalog));
+	}
+
+	@Test
+	public void testVariableStatisticsAreCreatedOnce() {
+		HeliosDeviceStats stats = new HeliosDeviceStats();
+		HeliosLatencyStats s = stats.getVariable("fan_stage");
+		assertSame(s, stats.getVariable("fan_stage"));
+		stats.recordFailure("fan_stage");
+		assertEquals(Double.valueOf(1), stats.getStatisticByName("fan_stage.failure_count"));
+	}
+
+	@Test
+	public void testConnectCountWithoutTransport() {
+		HeliosDeviceStats stats = new HeliosDeviceStats();
+		assertEquals(0, stats.getConnectCount());
+		assertEquals(Double.valueOf(0), stats.getStatisticByName("connect_count"));
+	}
+}
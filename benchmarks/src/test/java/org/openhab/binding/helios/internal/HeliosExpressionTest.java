@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+/**
+ * Tests of the compiler and the evaluation of {@link HeliosExpression} and of loading the virtual variables of
+ * a catalog
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosExpressionTest {
+
+	private static double evaluate(HeliosExpression expression, double... inputs) {
+		return expression.evaluate(inputs, new double[expression.getStackSize()]);
+	}
+
+	@Test
+	public void testPrecedence() {
+		HeliosExpression expression = new HeliosExpression("a + b * 2 - -c / (a - 1)");
+		assertArrayEquals(new String[] { "a", "b", "c" }, expression.getInputs());
+		assertEquals(3 + 4 * 2 + 6 / 2.0, evaluate(expression, 3, 4, 6), 1e-9);
+	}
+
+	@Test
+	public void testDivisionByZero() {
+		HeliosExpression expression = new HeliosExpression("a / (b - b)");
+		assertTrue(Double.isInfinite(evaluate(expression, 1, 2)));
+	}
+
+	@Test
+	public void testQuotedNames() {
+		HeliosExpression expression = new HeliosExpression("\"party-mode_remaining_time\" / 60 + \"fan_stages_stepped_range0-2\"");
+		assertArrayEquals(new String[] { "party-mode_remaining_time", "fan_stages_stepped_range0-2" },
+				expression.getInputs());
+		assertEquals(3, evaluate(expression, 120, 1), 1e-9);
+	}
+
+	@Test
+	public void testUnquotedDashIsSubtraction() {
+		HeliosExpression expression = new HeliosExpression("party-mode_remaining_time");
+		assertArrayEquals(new String[] { "party", "mode_remaining_time" }, expression.getInputs());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingQuote() {
+		new HeliosExpression("\"party-mode_remaining_time / 60");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMissingParenthesis() {
+		new HeliosExpression("(a + b");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTrailingInput() {
+		new HeliosExpression("a b");
+	}
+
+	@Test
+	public void testInvalidVirtualVariablesAreSkipped() {
+		HeliosVariableMap vMap = new HeliosVariableMap("test");
+		assertEquals(new HashSet<String>(Arrays.asList("party-mode_remaining_hours")), vMap.getVirtualNames());
+		assertNotNull(vMap.getExpression("party-mode_remaining_hours"));
+		assertNull(vMap.getExpression("unquoted"));
+		assertNotNull(vMap.getVariable("fan_stage"));
+	}
+}
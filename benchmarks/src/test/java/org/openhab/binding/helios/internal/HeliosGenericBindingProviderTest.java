@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+import org.openhab.model.item.binding.BindingConfigParseException;
+
+/**
+ * Tests of the interval parsing of {@link HeliosGenericBindingProvider}
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosGenericBindingProviderTest {
+
+	@Test
+	public void testIntervals() throws BindingConfigParseException {
+		assertEquals(500, HeliosGenericBindingProvider.parseInterval("500ms"));
+		assertEquals(500, HeliosGenericBindingProvider.parseInterval("500"));
+		assertEquals(5000, HeliosGenericBindingProvider.parseInterval("5s"));
+		assertEquals(600000, HeliosGenericBindingProvider.parseInterval("10m"));
+		assertEquals(3600000, HeliosGenericBindingProvider.parseInterval("1h"));
+		assertEquals(HeliosScheduler.ONCE, HeliosGenericBindingProvider.parseInterval("once"));
+	}
+
+	@Test
+	public void testInvalidIntervals() {
+		assertInvalid("0s");
+		assertInvalid("5x");
+		// too large for a long
+		assertInvalid("99999999999999999999");
+		// overflow of the multiplication
+		assertInvalid((Long.MAX_VALUE / 3600000 + 1) + "h");
+		assertInvalid((Long.MAX_VALUE / 1000 + 1) + "s");
+	}
+
+	private static void assertInvalid(String interval) {
+		try {
+			HeliosGenericBindingProvider.parseInterval(interval);
+			fail("'" + interval + "' accepted");
+		} catch (BindingConfigParseException e) {
+			assertEquals("invalid interval '" + interval + "'", e.getMessage());
+		}
+	}
+}
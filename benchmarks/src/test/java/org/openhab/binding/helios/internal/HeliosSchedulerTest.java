@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests of the tiers, the tick and the adaptive intervals of {@link HeliosScheduler}
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosSchedulerTest {
+
+	@Test
+	public void testTiers() {
+		Map<String, Long> intervals = new HashMap<String, Long>();
+		intervals.put("fast", 5000L);
+		intervals.put("slow", 60000L);
+		intervals.put("static", HeliosScheduler.ONCE);
+		HeliosScheduler scheduler = new HeliosScheduler(intervals, 60000);
+		assertEquals(5000, scheduler.getTick());
+
+		// everything is due at first, the static variable until it has been read
+		assertEquals(new HashSet<String>(Arrays.asList("fast", "slow", "static")), scheduler.getDueVariables(0));
+		assertEquals(new HashSet<String>(Arrays.asList("fast")), scheduler.getDueVariables(5000));
+		scheduler.markRead("static", false);
+		assertEquals(new HashSet<String>(Arrays.asList("fast", "slow")), scheduler.getDueVariables(60000));
+	}
+
+	@Test
+	public void testTickIsRoundedToWholeSeconds() {
+		Map<String, Long> intervals = new HashMap<String, Long>();
+		intervals.put("a", 7001L);
+		intervals.put("b", 60000L);
+		HeliosScheduler scheduler = new HeliosScheduler(intervals, 60000);
+		assertEquals(1000, scheduler.getTick());
+		assertEquals(7000, scheduler.getInterval("a"));
+		assertEquals(300, HeliosScheduler.snap(250));
+		assertEquals(HeliosScheduler.MIN_TICK, HeliosScheduler.snap(1));
+		assertEquals(HeliosScheduler.ONCE, HeliosScheduler.snap(HeliosScheduler.ONCE));
+		assertEquals(Long.MAX_VALUE / 1000 * 1000, HeliosScheduler.snap(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testAdaptiveInterval() {
+		Map<String, Long> intervals = new HashMap<String, Long>();
+		intervals.put("a", 10000L);
+		Map<String, Long> ceilings = new HashMap<String, Long>();
+		ceilings.put("a", 30000L);
+		HeliosScheduler scheduler = new HeliosScheduler(intervals, ceilings, 60000);
+		for (int i = 0; i < HeliosScheduler.STABLE_READS; i++) {
+			scheduler.markRead("a", false);
+		}
+		assertEquals(20000, scheduler.getInterval("a"));
+		for (int i = 0; i < 2 * HeliosScheduler.STABLE_READS; i++) {
+			scheduler.markRead("a", false);
+		}
+		assertEquals(30000, scheduler.getInterval("a"));
+		scheduler.markRead("a", true);
+		assertEquals(10000, scheduler.getInterval("a"));
+	}
+}
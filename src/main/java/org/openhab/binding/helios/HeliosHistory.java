@@ -0,0 +1,327 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps the recent values of a numeric Helios variable in a fixed-size ring buffer (primitive
+ * arrays, 16 bytes per sample), so short-term trends can be queried without the persistence service. The
+ * oldest sample is overwritten once the buffer is full. The samples are kept in chronological order: a timestamp
+ * older than the previous one (e.g. after the system clock has been set back) is raised to the previous one.
+ * <p>
+ * The histories of all variables with the item option <code>history</code> (or the device option
+ * <code>history</code>) are registered by the binding and can be looked up by rules, e.g.
+ * <code>HeliosHistory::get("temperature_supply_air").getAverage(3600000)</code>.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosHistory {
+
+	/**
+	 * The largest number of samples of a history
+	 */
+	public static final int MAX_CAPACITY = 100000;
+
+	/**
+	 * The registered histories, indexed by device ID and variable name
+	 */
+	private static final Map<String, HeliosHistory> histories = new ConcurrentHashMap<String, HeliosHistory>();
+
+	/**
+	 * The points in time of the samples (ms)
+	 */
+	private final long[] timestamps;
+
+	/**
+	 * The values of the samples
+	 */
+	private final double[] values;
+
+	/**
+	 * The index the next sample is written to
+	 */
+	private int head = 0;
+
+	/**
+	 * The number of samples
+	 */
+	private int size = 0;
+
+	/**
+	 * Constructor to create an empty history
+	 * @param capacity The number of samples kept (1 to {@link #MAX_CAPACITY})
+	 * @throws IllegalArgumentException If the capacity is out of range
+	 */
+	public HeliosHistory(int capacity) throws IllegalArgumentException {
+		if ((capacity < 1) || (capacity > MAX_CAPACITY)) {
+			throw new IllegalArgumentException("History capacity must be between 1 and " + MAX_CAPACITY);
+		}
+		this.timestamps = new long[capacity];
+		this.values = new double[capacity];
+	}
+
+	/**
+	 * Returns the history of a variable of the default device
+	 * @param variableName The variable name
+	 * @return The history or <tt>null</tt> if the variable has no history
+	 */
+	public static HeliosHistory get(String variableName) {
+		return get("", variableName);
+	}
+
+	/**
+	 * Returns the history of a variable
+	 * @param deviceId The device ID (empty for the default device)
+	 * @param variableName The variable name
+	 * @return The history or <tt>null</tt> if the variable has no history
+	 */
+	public static HeliosHistory get(String deviceId, String variableName) {
+		return histories.get(deviceId + ':' + variableName);
+	}
+
+	/**
+	 * Registers the history of a variable (called by the binding)
+	 * @param deviceId The device ID
+	 * @param variableName The variable name
+	 * @param history The history (<tt>null</tt> to unregister it)
+	 */
+	public static void register(String deviceId, String variableName, HeliosHistory history) {
+		if (history == null) {
+			histories.remove(deviceId + ':' + variableName);
+		} else {
+			histories.put(deviceId + ':' + variableName, history);
+		}
+	}
+
+	/**
+	 * Adds a sample, overwriting the oldest one if the history is full
+	 * @param timestamp The point in time of the sample (ms, raised to the one of the previous sample if older)
+	 * @param value The value
+	 */
+	public synchronized void add(long timestamp, double value) {
+		// the window queries rely on the order of the samples
+		if (this.size > 0) timestamp = Math.max(timestamp, this.timestamps[this.index(this.size - 1)]);
+		this.timestamps[this.head] = timestamp;
+		this.values[this.head] = value;
+		this.head = (this.head + 1) % this.values.length;
+		if (this.size < this.values.length) this.size++;
+	}
+
+	/**
+	 * Returns the number of samples kept at most
+	 * @return The capacity
+	 */
+	public int getCapacity() {
+		return this.values.length;
+	}
+
+	/**
+	 * Returns the number of samples
+	 * @return The number of samples
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the most recent value
+	 * @return The value or <tt>NaN</tt> if there are no samples
+	 */
+	public synchronized double getLatestValue() {
+		return this.size == 0 ? Double.NaN : this.values[this.index(this.size - 1)];
+	}
+
+	/**
+	 * Returns the point in time of the most recent sample
+	 * @return The timestamp (ms, 0 if there are no samples)
+	 */
+	public synchronized long getLatestTimestamp() {
+		return this.size == 0 ? 0 : this.timestamps[this.index(this.size - 1)];
+	}
+
+	/**
+	 * Copies the most recent samples (oldest first)
+	 * @param n The maximum number of samples
+	 * @param timestamps Receives the points in time (ms, at least <code>n</code> elements, <tt>null</tt> if not needed)
+	 * @param values Receives the values (at least <code>n</code> elements, <tt>null</tt> if not needed)
+	 * @return The number of samples copied
+	 */
+	public synchronized int getLast(int n, long[] timestamps, double[] values) {
+		int count = Math.min(n, this.size);
+		for (int i = 0; i < count; i++) {
+			int index = this.index(this.size - count + i);
+			if (timestamps != null) timestamps[i] = this.timestamps[index];
+			if (values != null) values[i] = this.values[index];
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the smallest value within a window ending now
+	 * @param window The length of the window (ms)
+	 * @return The minimum or <tt>NaN</tt> if there are no samples within the window
+	 */
+	public double getMinimum(long window) {
+		return this.getMinimum(window, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the smallest value within a window
+	 * @param window The length of the window (ms)
+	 * @param now The end of the window (ms, later samples are ignored)
+	 * @return The minimum or <tt>NaN</tt> if there are no samples within the window
+	 */
+	public synchronized double getMinimum(long window, long now) {
+		double min = Double.NaN;
+		int end = this.end(now);
+		for (int i = this.first(now - window); i < end; i++) {
+			double value = this.values[this.index(i)];
+			if (Double.isNaN(min) || (value < min)) min = value;
+		}
+		return min;
+	}
+
+	/**
+	 * Returns the largest value within a window ending now
+	 * @param window The length of the window (ms)
+	 * @return The maximum or <tt>NaN</tt> if there are no samples within the window
+	 */
+	public double getMaximum(long window) {
+		return this.getMaximum(window, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the largest value within a window
+	 * @param window The length of the window (ms)
+	 * @param now The end of the window (ms, later samples are ignored)
+	 * @return The maximum or <tt>NaN</tt> if there are no samples within the window
+	 */
+	public synchronized double getMaximum(long window, long now) {
+		double max = Double.NaN;
+		int end = this.end(now);
+		for (int i = this.first(now - window); i < end; i++) {
+			double value = this.values[this.index(i)];
+			if (Double.isNaN(max) || (value > max)) max = value;
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the average of the samples within a window ending now
+	 * @param window The length of the window (ms)
+	 * @return The average or <tt>NaN</tt> if there are no samples within the window
+	 */
+	public double getAverage(long window) {
+		return this.getAverage(window, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the average of the samples within a window
+	 * @param window The length of the window (ms)
+	 * @param now The end of the window (ms, later samples are ignored)
+	 * @return The average or <tt>NaN</tt> if there are no samples within the window
+	 */
+	public synchronized double getAverage(long window, long now) {
+		int first = this.first(now - window);
+		int end = this.end(now);
+		if (first >= end) return Double.NaN;
+		double sum = 0;
+		for (int i = first; i < end; i++) {
+			sum += this.values[this.index(i)];
+		}
+		return sum / (end - first);
+	}
+
+	/**
+	 * Returns the rate of change within a window ending now, i.e. the difference between the last and the first
+	 * sample of the window divided by the time between them
+	 * @param window The length of the window (ms)
+	 * @return The rate of change (per second) or <tt>NaN</tt> if there are less than two samples within the window
+	 */
+	public double getRateOfChange(long window) {
+		return this.getRateOfChange(window, System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the rate of change within a window, i.e. the difference between the last and the first sample of
+	 * the window divided by the time between them
+	 * @param window The length of the window (ms)
+	 * @param now The end of the window (ms, later samples are ignored)
+	 * @return The rate of change (per second) or <tt>NaN</tt> if there are less than two samples within the window
+	 */
+	public synchronized double getRateOfChange(long window, long now) {
+		int first = this.first(now - window);
+		int end = this.end(now);
+		if (end - first < 2) return Double.NaN;
+		int from = this.index(first);
+		int to = this.index(end - 1);
+		long duration = this.timestamps[to] - this.timestamps[from];
+		if (duration <= 0) return Double.NaN;
+		return (this.values[to] - this.values[from]) * 1000 / duration;
+	}
+
+	/**
+	 * Removes all samples
+	 */
+	public synchronized void clear() {
+		this.head = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Maps the position of a sample (0 is the oldest) to its index in the arrays
+	 */
+	private int index(int position) {
+		int index = this.head - this.size + position;
+		return index < 0 ? index + this.values.length : index;
+	}
+
+	/**
+	 * Returns the position of the oldest sample not older than a point in time
+	 * @param from The point in time (ms)
+	 * @return The position ({@link #size} if all samples are older)
+	 */
+	private int first(long from) {
+		return this.search(from, false);
+	}
+
+	/**
+	 * Returns the position after the newest sample not newer than a point in time
+	 * @param now The point in time (ms)
+	 * @return The position ({@link #size} if no sample is newer)
+	 */
+	private int end(long now) {
+		return this.search(now, true);
+	}
+
+	/**
+	 * Returns the position of the oldest sample newer than a point in time (or as old, unless <code>after</code>
+	 * is set) - the samples are ordered by time, so a binary search is used
+	 * @param time The point in time (ms)
+	 * @param after Whether samples of the point in time itself are skipped
+	 * @return The position ({@link #size} if all samples are older)
+	 */
+	private int search(long time, boolean after) {
+		int low = 0;
+		int high = this.size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			long timestamp = this.timestamps[this.index(mid)];
+			if ((timestamp < time) || (after && (timestamp == time))) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
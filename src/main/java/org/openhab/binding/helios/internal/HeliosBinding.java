@@ -8,30 +8,46 @@
  */
 package org.openhab.binding.helios.internal;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.openhab.binding.helios.*;
 import org.openhab.binding.helios.internal.HeliosGenericBindingProvider.HeliosBindingConfig;
 import org.apache.commons.lang.StringUtils;
-import org.openhab.core.binding.AbstractActiveBinding;
+import org.openhab.core.binding.AbstractBinding;
+import org.openhab.core.binding.BindingProvider;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
 import org.openhab.core.types.Type;
 import org.openhab.core.library.types.*;
+import org.openhab.model.item.binding.BindingConfigParseException;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
- * Implement this class if you are going create an actively polling service
- * like querying a Website/Device.
+ * The binding polling the Helios devices. The refresh cycles run on the binding's own scheduled executor with
+ * the refresh tick as period, so the tick can follow the refresh intervals of the bound items.
  * 
  * @author Bernhard Bauer
  * @since 1.8.0
  */
-public class HeliosBinding extends AbstractActiveBinding<HeliosBindingProvider> {
+public class HeliosBinding extends AbstractBinding<HeliosBindingProvider> {
 
 	private static final Logger logger = 
 		LoggerFactory.getLogger(HeliosBinding.class);
@@ -50,26 +66,59 @@ public class HeliosBinding extends AbstractActiveBinding<HeliosBindingProvider>
 	 */
 	private long refreshInterval = 60000;
 	
+	/**
+	 * The delay between a binding change and the warm-up of the devices (ms) - the bindings of all items of a
+	 * model file arrive one by one, they are picked up by a single warm-up
+	 */
+	static final long WARM_UP_DELAY = 100;
+	
+	/**
+	 * The configuration keys which can be set per device (e.g. <code>helios:unitA.host</code>), the keys
+	 * without a device qualifier configure the default device and provide the defaults for all other devices
+	 */
+	private static final Set<String> DEVICE_PROPERTIES = new HashSet<String>(Arrays.asList("host", "port", "unit",
+			"startAddress", "refresh", "republish", "transport", "pipeline", "commandQueueSize", "adaptiveCeiling",
+			"breakerThreshold", "cycleBudget", "readBack", "firmware", "history", "dependentRefresh"));
+	
+	/**
+	 * The configured Helios devices, indexed by device ID
+	 */
+	private volatile Map<String, HeliosDevice> devices = new HashMap<String, HeliosDevice>();
+	
+	/**
+	 * The event loop performing the socket I/O of the NIO transports (or <tt>null</tt>) - shared by all devices
+	 */
+	private HeliosNioEventLoop eventLoop;
+	
+	/**
+	 * The refresh tick, i.e. the largest interval the ticks of all devices are a multiple of (ms)
+	 */
+	private volatile long tick = 60000;
 	
 	/**
-	 * The IP Address of the Helios device
+	 * The executor running the refresh cycles (or <tt>null</tt> while not activated)
 	 */
-	private String host;
+	private ScheduledExecutorService refreshService;
 	
 	/**
-	 * The port of the Helios device
+	 * The periodic refresh task (or <tt>null</tt> if no device is configured)
 	 */
-	private int port;
+	private ScheduledFuture<?> refreshTask;
 	
 	/**
-	 * The unit address of the Helios device
+	 * The period the refresh task is scheduled with (ms)
 	 */
-	private int unit;
+	private long refreshPeriod = 0;
 	
 	/**
-	 * The start address when reading/writing from/to the modbus
+	 * Flag indicating a warm-up is scheduled on the refresh executor
 	 */
-	private int startAddress;
+	private final AtomicBoolean warmUpScheduled = new AtomicBoolean(false);
+	
+	/**
+	 * Flag indicating that the binding configs changed and the schedulers and indexes need to be rebuilt
+	 */
+	private volatile boolean bindingsChanged = true;
 	
 	
 	public HeliosBinding() {
@@ -85,26 +134,150 @@ public class HeliosBinding extends AbstractActiveBinding<HeliosBindingProvider>
 	public void activate(final BundleContext bundleContext, final Map<String, Object> configuration) {
 		this.bundleContext = bundleContext;
 
-		String refreshIntervalString = (String) configuration.get("refresh");
+		// group the configuration by device, keys without a qualifier are the defaults
+		Map<String, Map<String, String>> deviceConfigs = new TreeMap<String, Map<String, String>>();
+		for (Map.Entry<String, Object> e : configuration.entrySet()) {
+			if (!(e.getValue() instanceof String)) continue;
+			int dot = e.getKey().indexOf('.');
+			String id = dot < 0 ? HeliosDevice.DEFAULT_DEVICE : e.getKey().substring(0, dot);
+			String property = e.getKey().substring(dot + 1);
+			if (!DEVICE_PROPERTIES.contains(property) || StringUtils.isBlank((String) e.getValue())) continue;
+			Map<String, String> c = deviceConfigs.get(id);
+			if (c == null) {
+				c = new HashMap<String, String>();
+				deviceConfigs.put(id, c);
+			}
+			c.put(property, ((String) e.getValue()).trim());
+		}
+		Map<String, String> defaults = deviceConfigs.get(HeliosDevice.DEFAULT_DEVICE);
+		if (defaults == null) defaults = new HashMap<String, String>();
+
+		String refreshIntervalString = defaults.get("refresh");
 		if (StringUtils.isNotBlank(refreshIntervalString)) {
 			this.refreshInterval = Long.parseLong(refreshIntervalString);
 		}
 
-		this.host = (String) configuration.get("host");
+		// (re-)create the devices
+		this.closeConnection();
+		Map<String, HeliosDevice> devices = new HashMap<String, HeliosDevice>();
+		for (Map.Entry<String, Map<String, String>> e : deviceConfigs.entrySet()) {
+			Map<String, String> c = new HashMap<String, String>(defaults);
+			c.putAll(e.getValue());
+			if (StringUtils.isBlank(e.getValue().get("host"))) {
+				if (!HeliosDevice.DEFAULT_DEVICE.equals(e.getKey())) {
+					this.logger.warn("No host configured for Helios device '{}' - ignoring it", e.getKey());
+				}
+				continue;
+			}
+			try {
+				devices.put(e.getKey(), this.createDevice(e.getKey(), c));
+			} catch (NumberFormatException ex) {
+				this.logger.warn("Invalid configuration of Helios device '{}': {}", e.getKey(), ex.getMessage());
+			}
+		}
+		if (devices.isEmpty()) {
+			this.logger.warn("No Helios device configured (helios:host or helios:<device>.host)");
+		}
+		for (HeliosDevice device : devices.values()) {
+			device.start();
+		}
+		this.devices = devices;
+
+		this.bindingsChanged = true;
+		this.tick = this.refreshInterval;
+		if (devices.isEmpty()) {
+			this.stopRefresh(false);
+		} else {
+			this.scheduleRefresh(0, this.tick);
+		}
+	}
+	
+	/**
+	 * Creates a device
+	 * @param id The device ID
+	 * @param c The device's configuration (including the defaults)
+	 * @return The device
+	 */
+	private HeliosDevice createDevice(String id, Map<String, String> c) {
+		String host = c.get("host");
 		
 		// optional config settings
-		String c;
+		String s;
 		// port
-		c = (String) configuration.get("port"); 
-		this.port = c == null ? HeliosCommunicator.DEFAULT_PORT : Integer.parseInt(c);
+		s = c.get("port");
+		int port = s == null ? HeliosCommunicator.DEFAULT_PORT : Integer.parseInt(s);
 		// unit ID
-		c = (String) configuration.get("unit");
-		this.unit = c == null ? HeliosCommunicator.DEFAULT_UNIT : Integer.parseInt(c);
+		s = c.get("unit");
+		int unit = s == null ? HeliosCommunicator.DEFAULT_UNIT : Integer.parseInt(s);
 		// start address
-		c = (String) configuration.get("startAddress");
-		this.startAddress = c == null ? HeliosCommunicator.DEFAULT_START_ADDRESS : Integer.parseInt(c);		
-
-		setProperlyConfigured(true);
+		s = c.get("startAddress");
+		int startAddress = s == null ? HeliosCommunicator.DEFAULT_START_ADDRESS : Integer.parseInt(s);
+		// refresh interval
+		s = c.get("refresh");
+		long refresh = s == null ? this.refreshInterval : Long.parseLong(s);
+		// republish interval
+		s = c.get("republish");
+		long republish = s == null ? 0 : Long.parseLong(s);
+		// command queue size
+		s = c.get("commandQueueSize");
+		int commandQueueSize = s == null ? HeliosCommandQueue.DEFAULT_CAPACITY : Integer.parseInt(s);
+		// transport
+		s = c.get("transport");
+		String transport = s == null ? HeliosTransport.NIO : s.toLowerCase();
+		if (!HeliosTransport.NIO.equals(transport) && !HeliosTransport.J2MOD.equals(transport)) {
+			this.logger.warn("Unknown transport '{}', using '{}'", transport, HeliosTransport.NIO);
+			transport = HeliosTransport.NIO;
+		}
+		
+		// pipeline depth (experimental, NIO transport only)
+		s = c.get("pipeline");
+		int pipeline = s == null ? 1 : Integer.parseInt(s);
+		
+		HeliosTransport t = this.createTransport(transport, host, port);
+		if (t instanceof HeliosNioTransport) {
+			((HeliosNioTransport) t).setPipelineDepth(pipeline);
+		} else if (pipeline > 1) {
+			this.logger.warn("Pipelining requires the NIO transport - ignoring it for Helios device '{}'", id);
+		}
+		
+		// variable catalog of the firmware revision
+		s = c.get("firmware");
+		HeliosVariableMap catalog;
+		try {
+			catalog = HeliosVariableMap.getInstance(s == null ? null : s.trim());
+		} catch (IllegalArgumentException e) {
+			this.logger.warn("{} - using the default catalog for Helios device '{}'", e.getMessage(), id);
+			catalog = HeliosVariableMap.getInstance();
+		}
+		HeliosCommunicator heliosComm = new HeliosCommunicator(t, unit, startAddress, catalog);
+		HeliosDevice device = new HeliosDevice(id, this, heliosComm, refresh, republish, commandQueueSize);
+		
+		// consecutive transport failures after which polling is suspended
+		s = c.get("breakerThreshold");
+		if (s != null) device.setBreakerThreshold(Integer.parseInt(s));
+		// time budget of a poll cycle (ms, 0 for no limit, defaults to the scheduler tick)
+		s = c.get("cycleBudget");
+		if (s != null) device.setCycleBudget(Long.parseLong(s));
+		// number of recent values kept in memory for numeric variables
+		s = c.get("history");
+		if (s != null) device.setHistorySize(Math.min(Integer.parseInt(s.trim()), HeliosHistory.MAX_CAPACITY));
+		// delay before refreshing the variables depending on a written variable (ms, 0 to disable)
+		s = c.get("dependentRefresh");
+		if (s != null) device.setDependentRefresh(Long.parseLong(s.trim()));
+		// read back written variables
+		s = c.get("readBack");
+		if (s != null) device.setReadBack(Boolean.parseBoolean(s.trim()));
+		
+		// adaptive polling: ceiling of the refresh intervals (e.g. '30m', 0 to disable)
+		s = c.get("adaptiveCeiling");
+		if (s != null) {
+			try {
+				device.setAdaptiveCeiling(s.trim().equals("0") ? 0 : HeliosGenericBindingProvider.parseInterval(s));
+			} catch (BindingConfigParseException e) {
+				this.logger.warn("Invalid adaptiveCeiling '{}' for Helios device '{}' - polling with fixed intervals", s, id);
+			}
+		}
+		return device;
 	}
 	
 	/**
@@ -131,61 +304,221 @@ public class HeliosBinding extends AbstractActiveBinding<HeliosBindingProvider>
 	 */
 	public void deactivate(final int reason) {
 		this.bundleContext = null;
-		
+		this.stopRefresh(true);
+		this.closeConnection();
 	}
-
 	
 	/**
-	 * @{inheritDoc}
+	 * (Re-)schedules the refresh cycles, creating the refresh executor if necessary
+	 * @param delay The delay of the first cycle (ms)
+	 * @param period The period, i.e. the refresh tick (ms)
 	 */
-	@Override
-	protected long getRefreshInterval() {
-		return refreshInterval;
+	private synchronized void scheduleRefresh(long delay, long period) {
+		if (this.refreshService == null) {
+			final String name = this.getName();
+			this.refreshService = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, name);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		if (this.refreshTask != null) this.refreshTask.cancel(false);
+		this.refreshPeriod = period;
+		this.refreshTask = this.refreshService.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					execute();
+				} catch (RuntimeException e) {
+					// an exception would cancel the periodic task
+					logger.error("Refreshing the Helios devices failed", e);
+				}
+			}
+		}, delay, period, TimeUnit.MILLISECONDS);
+		this.logger.debug("Refreshing Helios devices every {} ms", period);
+	}
+	
+	/**
+	 * Stops the refresh cycles
+	 * @param shutdown <tt>true</tt> to shut the refresh executor down as well
+	 */
+	private synchronized void stopRefresh(boolean shutdown) {
+		if (this.refreshTask != null) {
+			this.refreshTask.cancel(false);
+			this.refreshTask = null;
+		}
+		this.refreshPeriod = 0;
+		if (shutdown && (this.refreshService != null)) {
+			this.refreshService.shutdownNow();
+			this.refreshService = null;
+		}
+	}
+	
+	/**
+	 * Creates a transport. The j2mod transport is used as a fallback if the NIO event loop cannot be started.
+	 * @param transport The transport ({@link HeliosTransport#NIO} or {@link HeliosTransport#J2MOD})
+	 * @param host The host
+	 * @param port The port
+	 * @return The transport
+	 */
+	private HeliosTransport createTransport(String transport, String host, int port) {
+		if (HeliosTransport.NIO.equals(transport)) {
+			try {
+				if (this.eventLoop == null) {
+					this.eventLoop = new HeliosNioEventLoop("Helios Event Loop");
+					this.eventLoop.start();
+				}
+				return new HeliosNioTransport(host, port, this.eventLoop);
+			} catch (IOException e) {
+				this.logger.warn("Starting the NIO event loop failed (" + e.getMessage() + ") - using the j2mod transport");
+			}
+		}
+		return new HeliosJ2modTransport(host, port);
+	}
+	
+	/**
+	 * Stops all devices and closes the connections to the Helios devices (if any)
+	 */
+	private void closeConnection() {
+		Map<String, HeliosDevice> devices = this.devices;
+		this.devices = new HashMap<String, HeliosDevice>();
+		for (HeliosDevice device : devices.values()) {
+			device.stop();
+		}
+		if (this.eventLoop != null) {
+			this.eventLoop.shutdown();
+			this.eventLoop = null;
+		}
 	}
 
+	
 	/**
 	 * @{inheritDoc}
 	 */
 	@Override
-	protected String getName() {
-		return "Helios Refresh Service";
+	public void bindingChanged(BindingProvider provider, String itemName) {
+		super.bindingChanged(provider, itemName);
+		this.bindingsChanged = true;
+		this.scheduleWarmUp();
 	}
 	
 	/**
 	 * @{inheritDoc}
 	 */
 	@Override
-	protected void execute() {
-		HeliosCommunicator heliosComm = new HeliosCommunicator(this.host, this.port, this.unit, this.startAddress);
+	public void allBindingsChanged(BindingProvider provider) {
+		super.allBindingsChanged(provider);
+		this.bindingsChanged = true;
+		this.scheduleWarmUp();
+	}
+	
+	/**
+	 * Schedules a warm-up on the refresh executor: the bindings are distributed to the devices and each device
+	 * submits a warm-up poll to its device lane right away instead of waiting for the next refresh tick. Before
+	 * the binding is activated nothing is scheduled, the first refresh cycle picks the bindings up.
+	 */
+	private synchronized void scheduleWarmUp() {
+		if ((this.refreshTask == null) || !this.warmUpScheduled.compareAndSet(false, true)) return;
+		try {
+			this.refreshService.schedule(new Runnable() {
+				public void run() {
+					warmUpScheduled.set(false);
+					try {
+						if (bindingsChanged) execute();
+					} catch (RuntimeException e) {
+						logger.error("Warming up the Helios devices failed", e);
+					}
+				}
+			}, WARM_UP_DELAY, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			this.warmUpScheduled.set(false); // binding is being deactivated
+		}
+	}
+	
+	/**
+	 * Distributes the binding configs of all items to the devices and rebuilds their schedulers - the devices
+	 * warm up with their next poll cycle, i.e. within the same call of {@link #execute()}. The refresh task is
+	 * rescheduled when the tick changed. Must only be called on the refresh executor.
+	 */
+	private void updateBindings() {
+		this.bindingsChanged = false;
+		Map<String, HeliosDevice> devices = this.devices;
+		Map<String, List<HeliosBindingConfig>> configsByDevice = new HashMap<String, List<HeliosBindingConfig>>();
+		for (String id : devices.keySet()) {
+			configsByDevice.put(id, new ArrayList<HeliosBindingConfig>());
+		}
 		for (HeliosBindingProvider provider : providers) {
 			for (String item : provider.getItemNames()) {
 				HeliosBindingConfig config = provider.getConfig(item);
-				HeliosVariableMap vMap = new HeliosVariableMap();
-				try {
-					String v = heliosComm.getValue(config.variableName);
-					eventPublisher.postUpdate(item, (State) toType(v, vMap.getVariable(config.variableName).getType(), config.dataTypes));
-				} catch (HeliosException e) {
-					this.logger.info(e.getMessage());
+				if (config == null) continue;
+				List<HeliosBindingConfig> configs = configsByDevice.get(config.deviceId);
+				if (configs == null) {
+					this.logger.warn("Item {} is bound to the unknown Helios device '{}'", item, config.deviceId);
+					continue;
 				}
+				configs.add(config);
 			}
 		}
+		long t = 0;
+		for (HeliosDevice device : devices.values()) {
+			device.updateBindings(configsByDevice.get(device.getId()));
+			t = HeliosScheduler.gcd(t, device.getTick());
+		}
+		this.tick = t == 0 ? this.refreshInterval : Math.max(t, HeliosScheduler.MIN_TICK);
+		synchronized (this) {
+			if ((this.refreshTask != null) && (this.tick != this.refreshPeriod)) {
+				this.scheduleRefresh(this.tick, this.tick);
+			}
+		}
+	}
+
+	/**
+	 * Returns the name of the refresh thread
+	 * @return The name
+	 */
+	protected String getName() {
+		return "Helios Refresh Service";
+	}
+	
+	/**
+	 * Submits the poll cycles of all devices to their device lanes - the devices are polled in parallel. Called
+	 * by the refresh executor once per tick.
+	 */
+	protected void execute() {
+		if (this.bindingsChanged) this.updateBindings();
+		long now = System.currentTimeMillis();
+		for (HeliosDevice device : this.devices.values()) {
+			device.refresh(now);
+		}
+	}
+	
+	/**
+	 * Publishes a state update of an item
+	 * @param itemName The item name
+	 * @param state The new state
+	 */
+	void postUpdate(String itemName, State state) {
+		eventPublisher.postUpdate(itemName, state);
 	}
 	
 	/**
 	 * Maps the Helios value to the corresponding openHAB command
 	 * @param heliosValue The Helios value
-	 * @param heliosType The Helios data type
 	 * @param dataTypes The allows data types of the openHAB item
 	 * @return The command
 	 */
-	private Type toType(String heliosValue, int heliosType, List<Class<? extends State>> dataTypes) {
-		switch (heliosType) {
+	static Type toType(HeliosValue heliosValue, List<Class<? extends State>> dataTypes) {
+		switch (heliosValue.getType()) {
 			case HeliosVariable.TYPE_INTEGER:
 			case HeliosVariable.TYPE_FLOAT:
-				if (dataTypes.contains(OnOffType.class)) return heliosValue.equals("1") ? OnOffType.ON : OnOffType.OFF;
-				else return DecimalType.valueOf(heliosValue);
+				if (dataTypes.contains(OnOffType.class)) {
+					return (heliosValue.getUnscaled() == 1) && (heliosValue.getScale() == 0) ? OnOffType.ON : OnOffType.OFF;
+				} else {
+					return new DecimalType(heliosValue.toBigDecimal());
+				}
 			case HeliosVariable.TYPE_STRING:
-				return StringType.valueOf(heliosValue);
+				return StringType.valueOf(heliosValue.toString());
 			default:
 				return null;
 		}
@@ -196,19 +529,32 @@ public class HeliosBinding extends AbstractActiveBinding<HeliosBindingProvider>
 	 */
 	@Override
 	protected void internalReceiveCommand(String itemName, Command command) {
-		HeliosCommunicator heliosComm = new HeliosCommunicator(this.host, this.port, this.unit, this.startAddress);
+		// commands are queued and written on the device lane so the event thread is never blocked
 		for (HeliosBindingProvider provider : providers) {
 			if (provider.providesBindingFor(itemName)) {
 				HeliosBindingConfig config = provider.getConfig(itemName);
-				try {
-					heliosComm.setValue(config.variableName, this.toHeliosValue(command));
-				} catch (HeliosException e) {
-					this.logger.info(e.getMessage());
+				HeliosDevice device = this.devices.get(config.deviceId);
+				if (device == null) {
+					this.logger.warn("Item {} is bound to the unknown Helios device '{}'", itemName, config.deviceId);
+				} else if (config.variableName.startsWith(HeliosDeviceStats.PREFIX)) {
+					this.logger.debug("Ignoring command {} for statistics item {}", command, itemName);
+				} else if (!device.sendCommand(config.variableName, this.toHeliosValue(command))) {
+					this.logger.warn("Command queue full ({} pending writes) - dropping command {} for item {}",
+							device.getCommandQueue().getCapacity(), command, itemName);
 				}
 			}
 		}
 	}
 	
+	/**
+	 * Returns a configured device
+	 * @param id The device ID ({@link HeliosDevice#DEFAULT_DEVICE} for the device configured without a qualifier)
+	 * @return The device (or <tt>null</tt> if not configured)
+	 */
+	public HeliosDevice getDevice(String id) {
+		return this.devices.get(id);
+	}
+	
 	/**
 	 * Maps the openHAB command to the corresponding Helios value
 	 * @param command The command
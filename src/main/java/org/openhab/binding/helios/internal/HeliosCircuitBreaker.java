@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * This class is the circuit breaker of a Helios device. It opens after a number of consecutive transport
+ * failures, so that an unreachable device is not polled variable by variable (each waiting for its own
+ * timeout). While open, only a single probe is allowed at a time, with an exponentially growing delay
+ * between probes. The breaker closes again as soon as a transaction succeeds.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosCircuitBreaker {
+
+	/**
+	 * Default number of consecutive transport failures opening the breaker
+	 */
+	public static final int DEFAULT_THRESHOLD = 3;
+
+	/**
+	 * Initial delay before probing an unreachable device (ms)
+	 */
+	public static final long MIN_PROBE_DELAY = 5000;
+
+	/**
+	 * Maximum delay between two probes (ms)
+	 */
+	public static final long MAX_PROBE_DELAY = 300000;
+
+	/**
+	 * The number of consecutive failures opening the breaker (0 to never open)
+	 */
+	private final int threshold;
+
+	/**
+	 * The number of consecutive failures
+	 */
+	private int failures = 0;
+
+	/**
+	 * Flag indicating the breaker is open
+	 */
+	private volatile boolean open = false;
+
+	/**
+	 * Current delay before the next probe (ms)
+	 */
+	private long probeDelay = 0;
+
+	/**
+	 * Earliest point in time for the next probe (ms)
+	 */
+	private volatile long nextProbe = 0;
+
+	/**
+	 * The number of times the breaker opened
+	 */
+	private volatile int openCount = 0;
+
+	/**
+	 * Constructor to set the member variables
+	 * @param threshold The number of consecutive transport failures opening the breaker (0 to never open)
+	 */
+	public HeliosCircuitBreaker(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Returns whether the breaker is open, i.e. the device is considered unreachable
+	 * @return <tt>true</tt> if open
+	 */
+	public boolean isOpen() {
+		return this.open;
+	}
+
+	/**
+	 * Returns whether transactions may be attempted: always if the breaker is closed, only once the probe
+	 * delay elapsed if it is open
+	 * @param now The current time (ms)
+	 * @return <tt>true</tt> if transactions may be attempted
+	 */
+	public boolean isAllowed(long now) {
+		return !this.open || (now >= this.nextProbe);
+	}
+
+	/**
+	 * Records a successful transaction - closes the breaker
+	 * @return <tt>true</tt> if the breaker was open
+	 */
+	public synchronized boolean recordSuccess() {
+		boolean wasOpen = this.open;
+		this.failures = 0;
+		this.probeDelay = 0;
+		this.open = false;
+		return wasOpen;
+	}
+
+	/**
+	 * Records a transport failure - opens the breaker once the threshold is reached, a failed probe of an
+	 * open breaker doubles the delay before the next probe
+	 * @param now The current time (ms)
+	 * @return <tt>true</tt> if the breaker has just been opened
+	 */
+	public synchronized boolean recordFailure(long now) {
+		this.failures++;
+		if (this.open) {
+			this.probeDelay = Math.min(this.probeDelay * 2, MAX_PROBE_DELAY);
+			this.nextProbe = now + this.probeDelay;
+			return false;
+		}
+		if ((this.threshold > 0) && (this.failures >= this.threshold)) {
+			this.open = true;
+			this.openCount++;
+			this.probeDelay = MIN_PROBE_DELAY;
+			this.nextProbe = now + this.probeDelay;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the delay between the last failed probe and the next one
+	 * @return The delay (ms, 0 if the breaker is closed)
+	 */
+	public synchronized long getProbeDelay() {
+		return this.probeDelay;
+	}
+
+	/**
+	 * Returns the number of times the breaker opened
+	 * @return The open count
+	 */
+	public int getOpenCount() {
+		return this.openCount;
+	}
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class holds the pending write commands of a Helios device. Pending writes to the same variable are
+ * coalesced (the last value wins), so the queue never holds more than one write per variable. If the queue
+ * is full, writes to variables which are not pending yet are rejected.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosCommandQueue {
+
+	/**
+	 * Default capacity
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * A pending write command
+	 */
+	public static class Write {
+
+		/**
+		 * The variable name
+		 */
+		public final String variableName;
+
+		/**
+		 * The new value
+		 */
+		public final String value;
+
+		private Write(String variableName, String value) {
+			this.variableName = variableName;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * The pending values indexed by variable name (in the order of the first write)
+	 */
+	private final LinkedHashMap<String, String> pending = new LinkedHashMap<String, String>();
+
+	/**
+	 * The maximum number of pending writes
+	 */
+	private final int capacity;
+
+	/**
+	 * Number of writes accepted
+	 */
+	private long acceptedCount = 0;
+
+	/**
+	 * Number of writes which replaced a pending write to the same variable
+	 */
+	private long coalescedCount = 0;
+
+	/**
+	 * Number of writes rejected because the queue was full
+	 */
+	private long rejectedCount = 0;
+
+	/**
+	 * Constructor to set the capacity
+	 * @param capacity The maximum number of pending writes
+	 */
+	public HeliosCommandQueue(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Adds a write command to the queue
+	 * @param variableName The variable name
+	 * @param value The new value
+	 * @return <tt>false</tt> if the queue is full and the write was rejected
+	 */
+	public synchronized boolean offer(String variableName, String value) {
+		if (this.pending.containsKey(variableName)) {
+			this.coalescedCount++;
+		} else if (this.pending.size() >= this.capacity) {
+			this.rejectedCount++;
+			return false;
+		}
+		this.pending.put(variableName, value);
+		this.acceptedCount++;
+		return true;
+	}
+
+	/**
+	 * Removes the oldest pending write command from the queue
+	 * @return The write command or <tt>null</tt> if the queue is empty
+	 */
+	public synchronized Write poll() {
+		Iterator<Map.Entry<String, String>> it = this.pending.entrySet().iterator();
+		if (!it.hasNext()) return null;
+		Map.Entry<String, String> e = it.next();
+		it.remove();
+		return new Write(e.getKey(), e.getValue());
+	}
+
+	/**
+	 * Removes all pending write commands
+	 */
+	public synchronized void clear() {
+		this.pending.clear();
+	}
+
+	/**
+	 * Returns the number of pending writes
+	 * @return The queue depth
+	 */
+	public synchronized int getDepth() {
+		return this.pending.size();
+	}
+
+	/**
+	 * Returns the capacity
+	 * @return The maximum number of pending writes
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the number of writes accepted (including coalesced writes)
+	 * @return The accepted count
+	 */
+	public synchronized long getAcceptedCount() {
+		return this.acceptedCount;
+	}
+
+	/**
+	 * Returns the number of writes which replaced a pending write to the same variable
+	 * @return The coalesced count
+	 */
+	public synchronized long getCoalescedCount() {
+		return this.coalescedCount;
+	}
+
+	/**
+	 * Returns the number of writes rejected because the queue was full
+	 * @return The rejected count
+	 */
+	public synchronized long getRejectedCount() {
+		return this.rejectedCount;
+	}
+}
@@ -1,21 +1,12 @@
 package org.openhab.binding.helios.internal;
 
-import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
-import com.ghgande.j2mod.modbus.io.ModbusTCPTransport;
-import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
-import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
-import com.ghgande.j2mod.modbus.msg.WriteMultipleRegistersRequest;
-import com.ghgande.j2mod.modbus.msg.WriteMultipleRegistersResponse;
-import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
-import com.ghgande.j2mod.modbus.procimg.Register;
-import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
-
-import java.net.InetAddress;
-import java.util.Arrays;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
- * This class is responsible for communicating with the Helios modbus.
+ * This class is responsible for communicating with the Helios modbus. The binding runs all transactions
+ * of a device on a single device lane, the synchronization in here only protects against misuse.
  * 
  * @author Bernhard Bauer
  * @since 1.8.0
@@ -38,14 +29,9 @@ public class HeliosCommunicator {
 	public static final int DEFAULT_START_ADDRESS = 1;
 	
 	/**
-	 * The host's IP address
-	 */
-	private String host;
-	
-	/**
-	 * The host's port
+	 * The transport used to talk to the Helios device
 	 */
-	private int port;
+	private HeliosTransport transport;
 	
 	/**
 	 * The hosts modbus unit ID
@@ -60,31 +46,54 @@ public class HeliosCommunicator {
 	/**
 	 * The variable map
 	 */
-	private HeliosVariableMap vMap;
+	private final HeliosVariableMap vMap;
+	
+	/**
+	 * The variables read to check whether the device tolerates pipelined transactions (built on first use)
+	 */
+	private HeliosVariable[] probeVariables;
+	
+	/**
+	 * The transaction statistics
+	 */
+	private final HeliosDeviceStats statistics;
+	
+	/**
+	 * Constructor to set the member variables - the connection is established lazily by {@link #connect()}
+	 * or the first transaction
+	 * @param transport The transport
+	 * @param address Modbus address (180)
+	 * @param startAddress Start address (1)
+	 */
+	public HeliosCommunicator(HeliosTransport transport, int unit, int startAddress) {
+		this(transport, unit, startAddress, HeliosVariableMap.getInstance());
+	}
 	
-	private TCPMasterConnection conn;
+	/**
+	 * Constructor to set the member variables for a device with a specific firmware revision - the connection
+	 * is established lazily by {@link #connect()} or the first transaction
+	 * @param transport The transport
+	 * @param address Modbus address (180)
+	 * @param startAddress Start address (1)
+	 * @param vMap The variable catalog of the device's firmware
+	 */
+	public HeliosCommunicator(HeliosTransport transport, int unit, int startAddress, HeliosVariableMap vMap) {
+		this.transport = transport;
+		this.unit = unit;
+		this.startAddress = startAddress;
+		this.vMap = vMap;
+		this.statistics = new HeliosDeviceStats(transport);
+	}
 	
 	/**
-	 * Constructor to set the member variables
+	 * Constructor to set the member variables using the j2mod transport
 	 * @param host IP Address
 	 * @param port Port (502)
 	 * @param address Modbus address (180)
 	 * @param startAddress Start address (1)
 	 */
 	public HeliosCommunicator(String host, int port, int unit, int startAddress) {
-		this.host = host;
-		this.port = port;
-		this.unit = unit;
-		this.startAddress = startAddress;
-		this.vMap = new HeliosVariableMap();
-		try {
-			this.conn = new TCPMasterConnection(InetAddress.getByName(host));
-			this.conn.setPort(port);
-			this.conn.connect();
-			//((ModbusTCPTransport) this.conn.getModbusTransport()).setHeadless();
-		} catch (Exception e) {
-			System.err.println(e.getClass().toString());
-		}
+		this(new HeliosJ2modTransport(host, port), unit, startAddress);
 	}
 	
 	/**
@@ -95,6 +104,63 @@ public class HeliosCommunicator {
 		this(host, HeliosCommunicator.DEFAULT_PORT, HeliosCommunicator.DEFAULT_UNIT, HeliosCommunicator.DEFAULT_START_ADDRESS);
 	}
 	
+
+	/**
+	 * Opens the connection to the Helios device unless it is already open. After a failed attempt further
+	 * attempts are deferred with an exponentially growing delay.
+	 * @throws HeliosException if the connection could not be established
+	 */
+	public void connect() throws HeliosException {
+		this.transport.connect();
+	}
+	
+	/**
+	 * Closes the connection to the Helios device (if open)
+	 */
+	public void close() {
+		this.transport.close();
+	}
+	
+	/**
+	 * Returns whether the connection to the Helios device is currently open
+	 * @return <tt>true</tt> if connected
+	 */
+	public boolean isConnected() {
+		return this.transport.isConnected();
+	}
+	
+	/**
+	 * Returns the number of successful connects (i.e. TCP handshakes) since this communicator was created
+	 * @return The connect count
+	 */
+	public int getConnectCount() {
+		return this.transport.getConnectCount();
+	}
+	
+	/**
+	 * Returns the transport used to talk to the Helios device
+	 * @return The transport
+	 */
+	public HeliosTransport getTransport() {
+		return this.transport;
+	}
+	
+	/**
+	 * Returns the variable catalog of the Helios device
+	 * @return The variable map
+	 */
+	public HeliosVariableMap getCatalog() {
+		return this.vMap;
+	}
+	
+	/**
+	 * Returns the transaction statistics (latencies and failures of all transactions)
+	 * @return The statistics
+	 */
+	public HeliosDeviceStats getStatistics() {
+		return this.statistics;
+	}
+	
 	
 	/**
 	 * Sets a variable in the Helios device
@@ -106,52 +172,36 @@ public class HeliosCommunicator {
 	public String setValue(String variableName, String value) throws HeliosException {
 		
 		HeliosVariable v = this.vMap.getVariable(variableName);
+		if (v == null) {
+			throw new HeliosException("Unknown variable '" + variableName + "'");
+		}
 		
-		// check range if applicable
+		// check type and range
 		if ((v.getAccess() == HeliosVariable.ACCESS_W) || (v.getAccess() == HeliosVariable.ACCESS_RW)) { // changing value is allowed
-			
-			boolean inAllowedRange = false;
-			
-			if (v.getMinVal() != null) { // min and max value are set
-				if (v.getMinVal() instanceof Integer) {
-					inAllowedRange = (((Integer) v.getMinVal()).intValue() <= Integer.parseInt(value));
-					if (v.getMaxVal() instanceof Integer) {
-						inAllowedRange = inAllowedRange && (((Integer) v.getMaxVal()).intValue() >= Integer.parseInt(value));
-					} else { // Long
-						inAllowedRange = inAllowedRange && (((Long) v.getMaxVal()).longValue() >= Long.parseLong(value));
-					}
-				} else if (v.getMinVal() instanceof Double) {
-					inAllowedRange = (((Double) v.getMinVal()).doubleValue() <= Double.parseDouble(value))
-							&& (((Double) v.getMaxVal()).doubleValue() >= Double.parseDouble(value));
-				}
-			} else {
-				inAllowedRange = true; // no range to check
+			HeliosValue parsed = new HeliosValue();
+			if (!parsed.parse(value, v.getType())) {
+				throw new HeliosException("Invalid value '" + value + "'");
+			}
+			if (!v.accepts(parsed)) {
+				throw new HeliosException("Value is outside of allowed range");
 			}
+			String payload = v.getVariableString() + "=" + value;
 			
-			if (inAllowedRange) {
-				String payload = v.getVariableString() + "=" + value;
-				
-				// create request
-				WriteMultipleRegistersRequest request = new WriteMultipleRegistersRequest(this.startAddress, this.preparePayload(payload));
-				request.setUnitID(this.unit);
-				
-				// communicate with modbus
+			// communicate with modbus - an assignment also selects the variable, so it must not be sent while
+			// another transaction is between selecting and reading a variable
+			long start;
+			synchronized (this) {
+				start = System.nanoTime();
 				try {
-					ModbusTCPTransaction trans = new ModbusTCPTransaction(this.conn);
-					
-					// send request
-					trans.setRequest(request);
-					trans.setReconnecting(true);
-					trans.execute();
-					
-					return value;
-					
-				} catch (Exception e) {
-					throw new HeliosException("Communication with Helios device failed");
+					this.transport.writeRegisters(this.unit, this.startAddress, preparePayload(payload));
+				} catch (HeliosException e) {
+					this.statistics.recordFailure(variableName);
+					throw e;
 				}
-			} else {
-				throw new HeliosException("Value is outside of allowed range");
 			}
+			long duration = System.nanoTime() - start;
+			this.statistics.recordSuccess(variableName, duration, -1, duration);
+			return value;
 		} else {
 			throw new HeliosException("Variable is read-only");
 		}
@@ -164,89 +214,176 @@ public class HeliosCommunicator {
 	 * @throws HeliosException 
 	 */
 	public String getValue(String variableName) throws HeliosException {
+		HeliosValue value = new HeliosValue();
+		this.getValue(variableName, value);
+		return value.toString();
+	}
+	
+	/**
+	 * Read a variable from the Helios device 
+	 * @param variableName The variable name
+	 * @param value The value to decode the response into (reused to avoid allocations)
+	 * @throws HeliosException 
+	 */
+	public void getValue(String variableName, HeliosValue value) throws HeliosException {
 		
 		HeliosVariable v = this.vMap.getVariable(variableName);
-		String payload = v.getVariableString();
+		if (v == null) {
+			throw new HeliosException("Unknown variable '" + variableName + "'");
+		}
 		
-		// create request 1
-		WriteMultipleRegistersRequest request1 = new WriteMultipleRegistersRequest(this.startAddress, this.preparePayload(payload));
-		request1.setUnitID(this.unit);
+		// communicate with modbus - both requests have to be sent on the same connection without interruption
+		synchronized (this) {
+			this.read(variableName, v, value);
+		}
+	}
+	
+	/**
+	 * Reads a variable from the Helios device - the caller has to hold the lock of this communicator
+	 * @param variableName The variable name
+	 * @param v The variable
+	 * @param value The value to decode the response into
+	 * @throws HeliosException 
+	 */
+	private void read(String variableName, HeliosVariable v, HeliosValue value) throws HeliosException {
+		long start = System.nanoTime();
 		
-		// create request 2
-		ReadMultipleRegistersRequest request2 = new ReadMultipleRegistersRequest(this.startAddress, v.getCount());
-		request2.setUnitID(this.unit);
+		// select the variable
+		try {
+			this.transport.writeRegisters(this.unit, this.startAddress, v.getRequestBytes());
+		} catch (HeliosException e) {
+			this.statistics.recordFailure(variableName);
+			throw e;
+		}
+		long selected = System.nanoTime();
 		
-		// communicate with modbus
+		// read the value
 		try {
-			ModbusTCPTransaction trans = new ModbusTCPTransaction(this.conn);
-			
-			// send request 1
-			trans.setRequest(request1);
-			trans.setReconnecting(true);
-			trans.execute();
-			
-			// receive response
-			//WriteMultipleRegistersResponse response1 = (WriteMultipleRegistersResponse) trans.getResponse();
-			
-			// send request 2
-			trans.setRequest(request2);
-			trans.setReconnecting(true);
-			trans.execute();
-			
-			// receive response
-			ReadMultipleRegistersResponse response2 = (ReadMultipleRegistersResponse) trans.getResponse();
-			String value = decodeResponse(response2.getRegisters());
-			return value;
-			
-		} catch (Exception e) {
-			throw new HeliosException("Communication with Helios device failed");
+			this.transport.readRegisters(this.unit, this.startAddress, v.getCount(), v.getType(), value);
+		} catch (HeliosException e) {
+			this.statistics.recordFailure(variableName);
+			throw new HeliosException(e.getMessage() + " (variable " + variableName + ")");
+		}
+		long end = System.nanoTime();
+		this.statistics.recordSuccess(variableName, selected - start, end - selected, end - start);
+	}
+	
+	/**
+	 * Reads a set of variables from the Helios device into a new snapshot
+	 * @param variableNames The variable names
+	 * @return The snapshot
+	 * @see #readAll(Collection, HeliosSnapshot, HeliosSnapshot.Listener)
+	 */
+	public HeliosSnapshot readAll(Collection<String> variableNames) {
+		return this.readAll(variableNames, new HeliosSnapshot(variableNames.size()), null);
+	}
+	
+	/**
+	 * Reads a set of variables from the Helios device in batches: the variables of a batch (a single variable unless
+	 * pipelining is used) are read in order without being interrupted by other transactions. The listener is called
+	 * after the lock of this communicator has been released, so other transactions may run between two batches.
+	 * Failures are recorded per variable, they don't stop the read.
+	 * @param variableNames The variable names
+	 * @param snapshot The snapshot to read the values into (reused to avoid allocations)
+	 * @param listener The listener which is notified after each transaction or pipelined batch - may stop the
+	 * read, may also write variables (<tt>null</tt> for none)
+	 * @return The snapshot
+	 */
+	public HeliosSnapshot readAll(Collection<String> variableNames, HeliosSnapshot snapshot, HeliosSnapshot.Listener listener) {
+		snapshot.prepare(variableNames, this.vMap);
+		int depth = Math.max(this.transport.getPipelineDepth(), 1);
+		for (int from = 0; from < snapshot.size(); from += depth) {
+			int to = Math.min(from + depth, snapshot.size());
+			synchronized (this) {
+				if ((to - from > 1) && snapshot.prepareBatch(from, to)) {
+					this.readBatch(snapshot, from, to);
+				} else {
+					for (int i = from; i < to; i++) {
+						HeliosVariable v = snapshot.getVariable(i);
+						try {
+							if (v == null) {
+								throw new HeliosException("Unknown variable '" + snapshot.getName(i) + "'");
+							}
+							this.read(snapshot.getName(i), v, snapshot.getValue(i));
+						} catch (HeliosException e) {
+							snapshot.setError(i, e);
+						}
+					}
+				}
+			}
+			snapshot.setRead(from, to, System.currentTimeMillis());
+			// the listener publishes the values, which must not block the transactions of other threads
+			if ((listener != null) && !listener.batchRead(snapshot, from, to)) break;
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Reads a prepared batch of variables with pipelined transactions - the caller has to hold the lock of
+	 * this communicator
+	 * @param snapshot The snapshot
+	 * @param from The index of the first variable of the batch
+	 * @param to The index after the last variable of the batch
+	 */
+	private void readBatch(HeliosSnapshot snapshot, int from, int to) {
+		int n = to - from;
+		HeliosException[] errors = snapshot.getBatchErrors(n);
+		long start = System.nanoTime();
+		this.transport.readVariables(this.unit, this.startAddress, snapshot.getBatchVariables(n),
+				snapshot.getBatchValues(n), errors);
+		long duration = System.nanoTime() - start;
+		// the transactions of a batch overlap, so only the duration of the whole batch is known
+		for (int i = 0; i < n; i++) {
+			String variableName = snapshot.getName(from + i);
+			if (errors[i] != null) {
+				this.statistics.recordFailure(variableName);
+				snapshot.setError(from + i, new HeliosException(errors[i].getMessage() + " (variable " + variableName + ")"));
+			} else {
+				this.statistics.recordSuccess(variableName, -1, -1, duration);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Checks whether the Helios device tolerates pipelined transactions by reading its static variables (only
+	 * if the transport is configured to use pipelining)
+	 */
+	public synchronized void probePipelining() {
+		if (this.probeVariables == null) {
+			List<HeliosVariable> variables = new ArrayList<HeliosVariable>();
+			for (String name : this.vMap.getNames()) {
+				if (this.vMap.isStatic(name)) variables.add(this.vMap.getVariable(name));
+			}
+			this.probeVariables = variables.toArray(new HeliosVariable[variables.size()]);
 		}
+		this.transport.probePipelining(this.unit, this.startAddress, this.probeVariables);
+	}
+	
+	/**
+	 * Returns the number of variables {@link #readAll(Collection, HeliosSnapshot, HeliosSnapshot.Listener)} reads in
+	 * one pipelined batch
+	 * @return The pipeline depth (1 if pipelining is not used)
+	 */
+	public int getPipelineDepth() {
+		return this.transport.getPipelineDepth();
 	}
 	
 	
 	/**
 	 * Prepares the payload for the request
 	 * @param payload The String representation of the payload
-	 * @return The Register representation of the payload
+	 * @return The register contents (two bytes per register, terminated with at least one 0x00)
 	 */
-	private Register[] preparePayload(String payload) {
+	static byte[] preparePayload(String payload) {
 		
 		// determine number of registers
 		int l = (payload.length() + 1) / 2; // +1 because we need to include at least one termination symbol 0x00
 		if ((payload.length() + 1) % 2 != 0) l++;
 
-		Register reg[] = new Register[l];
+		byte[] reg = new byte[l * 2]; // remaining bytes stay 0x00
 		byte[] b = payload.getBytes();
-		int ch = 0;
-		for (int i = 0; i < reg.length; i++) {
-			byte b1 = ch < b.length ? b[ch] : (byte) 0x00; // terminate with 0x00 if at the end of the payload
-			ch++;
-			byte b2 = ch < b.length ? b[ch] : (byte) 0x00;
-			ch++;
-			reg[i] = new SimpleRegister(b1, b2);
-		}
+		System.arraycopy(b, 0, reg, 0, Math.min(b.length, reg.length));
 		return reg;
 	}
-	
-	/**
-	 * Decodes the Helios device' response and returns the actual value of the variable
-	 * @param response The registers received from the Helios device
-	 * @return The value or <tt>null</tt> if an error occurred
-	 */
-	private String decodeResponse(Register[] response) {
-		byte[] b = new byte[response.length * 2];
-		int actSize = 0; // track the actual size of the useable array (excluding any 0x00 characters)
-		for (int i = 0; i < response.length; i++) {
-			byte[] reg = response[i].toBytes();
-			if (reg.length == 2) { // only add to the array if it's a useable character
-				if (reg[0] != 0x00) b[actSize++] = reg[0];
-				if (reg[1] != 0x00) b[actSize++] = reg[1];
-			}
-		}
-		b = Arrays.copyOf(b, actSize); // before creating a string of it the array needs to be truncated
-		String r = new String(b);
-		String[] parts = r.split("="); // remove the part "vXXXX=" from the string
-		if (parts.length == 2) return parts[1];
-		else return null;
-	}
 }
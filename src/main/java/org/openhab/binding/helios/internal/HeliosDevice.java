@@ -0,0 +1,1126 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.openhab.binding.helios.HeliosHistory;
+import org.openhab.binding.helios.internal.HeliosGenericBindingProvider.HeliosBindingConfig;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class represents a single Helios device (KWL unit). It owns the connection, the device lane running
+ * all transactions with the device, the pending write commands, the polling schedule and the values last
+ * published for its items. Each device is polled on its own lane, so a slow or unreachable device does not
+ * delay the others. A circuit breaker stops polling a device which is unreachable and probes it with a
+ * growing delay instead.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosDevice {
+
+	private static final Logger logger = LoggerFactory.getLogger(HeliosDevice.class);
+
+	/**
+	 * The ID of the device configured without a qualifier (e.g. <code>helios:host</code>)
+	 */
+	public static final String DEFAULT_DEVICE = "";
+
+	/**
+	 * Cycle budget meaning the scheduler tick, i.e. a cycle should complete before the next one is due
+	 */
+	public static final long DEFAULT_CYCLE_BUDGET = -1;
+
+	/**
+	 * Default delay between a write and the refresh of the variables depending on the written one (ms)
+	 */
+	public static final long DEFAULT_DEPENDENT_REFRESH = 2000;
+
+	/**
+	 * The value last published for a variable
+	 */
+	private static class PublishedValue {
+
+		/**
+		 * The value as read from the Helios device
+		 */
+		private final HeliosValue value = new HeliosValue();
+
+		/**
+		 * The point in time when the value was published (ms)
+		 */
+		private long timestamp;
+	}
+
+	/**
+	 * The state of a virtual variable bound to items of this device - must only be accessed on the device lane
+	 */
+	private static class Virtual {
+
+		/**
+		 * The variable name
+		 */
+		private final String name;
+
+		/**
+		 * The compiled expression
+		 */
+		private final HeliosExpression expression;
+
+		/**
+		 * The binding configs of the items bound to the variable
+		 */
+		private final List<HeliosBindingConfig> configs = new ArrayList<HeliosBindingConfig>();
+
+		/**
+		 * The values of the inputs read last
+		 */
+		private final double[] inputs;
+
+		/**
+		 * The evaluation stack
+		 */
+		private final double[] stack;
+
+		/**
+		 * The number of inputs which have not been read yet
+		 */
+		private int missing;
+
+		/**
+		 * Flag indicating an input has been read since the last evaluation
+		 */
+		private boolean dirty = false;
+
+		/**
+		 * The value published last (<tt>NaN</tt> if UNDEF, <tt>null</tt> if nothing was published yet)
+		 */
+		private Double published = null;
+
+		/**
+		 * The point in time when the value was published (ms)
+		 */
+		private long timestamp;
+
+		private Virtual(String name, HeliosExpression expression) {
+			this.name = name;
+			this.expression = expression;
+			this.inputs = new double[expression.getInputs().length];
+			this.stack = new double[expression.getStackSize()];
+			this.reset();
+		}
+
+		/**
+		 * Sets the value of an input
+		 * @param input The input variable name
+		 * @param value The value
+		 */
+		private void set(String input, double value) {
+			String[] names = this.expression.getInputs();
+			for (int i = 0; i < names.length; i++) {
+				if (!names[i].equals(input)) continue;
+				if (Double.isNaN(this.inputs[i])) this.missing--;
+				this.inputs[i] = value;
+				this.dirty = true;
+			}
+		}
+
+		/**
+		 * Forgets the values of all inputs
+		 */
+		private void reset() {
+			Arrays.fill(this.inputs, Double.NaN);
+			this.missing = this.inputs.length;
+			this.dirty = false;
+			this.published = null;
+		}
+	}
+
+	/**
+	 * The device ID
+	 */
+	private final String id;
+
+	/**
+	 * The binding publishing the values
+	 */
+	private final HeliosBinding binding;
+
+	/**
+	 * The communicator holding the long-lived connection to the Helios device
+	 */
+	private final HeliosCommunicator heliosComm;
+
+	/**
+	 * The refresh interval of variables without a refresh option (ms)
+	 */
+	private final long refreshInterval;
+
+	/**
+	 * Interval after which unchanged values are published again (ms, 0 to publish changes only)
+	 */
+	private final long republishInterval;
+
+	/**
+	 * The ceiling of adaptively polled variables without a maxRefresh option (ms, 0 to disable adaptive polling)
+	 */
+	private volatile long adaptiveCeiling = 0;
+
+	/**
+	 * The number of values kept in memory for numeric variables without a history option (0 for none)
+	 */
+	private volatile int historySize = 0;
+
+	/**
+	 * The histories of the polled variables, indexed by variable name
+	 */
+	private volatile Map<String, HeliosHistory> histories = new HashMap<String, HeliosHistory>();
+
+	/**
+	 * The circuit breaker suspending the polling while the device is unreachable
+	 */
+	private volatile HeliosCircuitBreaker breaker = new HeliosCircuitBreaker(HeliosCircuitBreaker.DEFAULT_THRESHOLD);
+
+	/**
+	 * Flag indicating written variables are read back immediately to publish the state confirmed by the device
+	 */
+	private volatile boolean readBack = false;
+
+	/**
+	 * The time budget of a poll cycle (ms, 0 for no limit or {@link #DEFAULT_CYCLE_BUDGET})
+	 */
+	private volatile long cycleBudget = DEFAULT_CYCLE_BUDGET;
+
+	/**
+	 * The variables which did not fit into the budget of the previous cycle - they are read first in the next one
+	 */
+	private final ConcurrentLinkedQueue<String> deferred = new ConcurrentLinkedQueue<String>();
+
+	/**
+	 * The number of variables read successfully in the current cycle - must only be accessed on the device lane
+	 */
+	private int refreshedCount = 0;
+
+	/**
+	 * Flag indicating the previous cycle exceeded its budget - must only be accessed on the device lane
+	 */
+	private boolean overrun = false;
+
+	/**
+	 * The pending write commands
+	 */
+	private final HeliosCommandQueue commandQueue;
+
+	/**
+	 * The single thread executing all transactions with the Helios device (polls and commands), so that the
+	 * two requests of a read can never be interleaved with another transaction
+	 */
+	private ScheduledExecutorService deviceLane;
+
+	/**
+	 * The delay between a write and the refresh of the dependent variables (ms, 0 to wait for the next poll)
+	 */
+	private volatile long dependentRefresh = DEFAULT_DEPENDENT_REFRESH;
+
+	/**
+	 * The dependent variables to be refreshed, with the point in time they are due (ms) - must only be accessed on
+	 * the device lane
+	 */
+	private final Map<String, Long> dependentsDue = new HashMap<String, Long>();
+
+	/**
+	 * Flag indicating a refresh of dependent variables is scheduled - must only be accessed on the device lane
+	 */
+	private boolean dependentRefreshScheduled = false;
+
+	/**
+	 * Flag indicating a task writing the pending commands is already submitted to the device lane
+	 */
+	private final AtomicBoolean writerScheduled = new AtomicBoolean(false);
+
+	/**
+	 * Flag indicating a poll cycle is submitted to the device lane and not completed yet
+	 */
+	private final AtomicBoolean pollScheduled = new AtomicBoolean(false);
+
+	/**
+	 * Flag indicating the next poll cycle is a warm-up, i.e. reads all bound variables (static identity
+	 * variables first) as fast as possible without a time budget
+	 */
+	private volatile boolean warmUp = true;
+
+	/**
+	 * The scheduler deciding which variables are due
+	 */
+	private volatile HeliosScheduler scheduler = new HeliosScheduler(new HashMap<String, Long>(), HeliosScheduler.MIN_TICK);
+
+	/**
+	 * The binding configs of all items bound to this device, indexed by variable name
+	 */
+	private volatile Map<String, List<HeliosBindingConfig>> itemsByVariable = new HashMap<String, List<HeliosBindingConfig>>();
+
+	/**
+	 * The virtual variables bound to items of this device, indexed by variable name
+	 */
+	private volatile Map<String, Virtual> virtuals = new HashMap<String, Virtual>();
+
+	/**
+	 * The virtual variables computed from each polled variable, indexed by the name of the input variable
+	 */
+	private volatile Map<String, List<Virtual>> virtualsByInput = new HashMap<String, List<Virtual>>();
+
+	/**
+	 * The binding configs of all statistics items of this device, indexed by statistic name (without the prefix)
+	 */
+	private volatile Map<String, List<HeliosBindingConfig>> statisticsItems = new HashMap<String, List<HeliosBindingConfig>>();
+
+	/**
+	 * The statistics last published, indexed by statistic name
+	 */
+	private final Map<String, Double> lastStatistics = new ConcurrentHashMap<String, Double>();
+
+	/**
+	 * The dead-band of each variable (the smallest dead-band of all items bound to the variable)
+	 */
+	private volatile Map<String, Double> deadbands = new HashMap<String, Double>();
+
+	/**
+	 * The values last published, indexed by variable name
+	 */
+	private final Map<String, PublishedValue> lastValues = new ConcurrentHashMap<String, PublishedValue>();
+
+	/**
+	 * The value read last - reused for every read, must only be accessed on the device lane
+	 */
+	private final HeliosValue readValue = new HeliosValue();
+
+	/**
+	 * The snapshot of a poll cycle - reused for every cycle, must only be accessed on the device lane
+	 */
+	private final HeliosSnapshot snapshot = new HeliosSnapshot();
+
+	/**
+	 * Constructor to set the member variables - the device lane is started by {@link #start()}
+	 * @param id The device ID
+	 * @param binding The binding publishing the values
+	 * @param heliosComm The communicator
+	 * @param refreshInterval The refresh interval of variables without a refresh option (ms)
+	 * @param republishInterval The republish interval (ms, 0 to publish changes only)
+	 * @param commandQueueSize The maximum number of pending write commands
+	 */
+	public HeliosDevice(String id, HeliosBinding binding, HeliosCommunicator heliosComm, long refreshInterval,
+			long republishInterval, int commandQueueSize) {
+		this.id = id;
+		this.binding = binding;
+		this.heliosComm = heliosComm;
+		this.refreshInterval = refreshInterval;
+		this.republishInterval = republishInterval;
+		this.commandQueue = new HeliosCommandQueue(commandQueueSize);
+	}
+
+	/**
+	 * Starts the device lane and opens the connection to the Helios device
+	 */
+	public synchronized void start() {
+		this.heliosComm.getStatistics().register(this.id);
+		final String name = "Helios Device Lane " + this + " " + this.heliosComm.getTransport().getAddress();
+		ScheduledThreadPoolExecutor lane = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		// pending refreshes of dependent variables are dropped when the device is stopped
+		lane.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+		this.deviceLane = lane;
+		try {
+			this.heliosComm.connect();
+			logger.debug("Connected to Helios device {} at {}", this, this.heliosComm.getTransport().getAddress());
+		} catch (HeliosException e) {
+			logger.warn(e.getMessage() + " - will retry on next refresh");
+		}
+	}
+
+	/**
+	 * Stops the device lane and closes the connection to the Helios device
+	 */
+	public synchronized void stop() {
+		if (this.deviceLane != null) {
+			this.deviceLane.shutdown();
+			try {
+				this.deviceLane.awaitTermination(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.deviceLane = null;
+		}
+		logger.debug("Closing connection to Helios device {} after {} connect(s)", this, this.heliosComm.getConnectCount());
+		this.heliosComm.close();
+		this.heliosComm.getStatistics().unregister();
+		for (String variableName : this.histories.keySet()) {
+			HeliosHistory.register(this.id, variableName, null);
+		}
+	}
+
+	/**
+	 * Returns the device ID
+	 * @return The ID ({@link #DEFAULT_DEVICE} for the device configured without a qualifier)
+	 */
+	public String getId() {
+		return this.id;
+	}
+
+	/**
+	 * Returns the communicator
+	 * @return The communicator
+	 */
+	public HeliosCommunicator getCommunicator() {
+		return this.heliosComm;
+	}
+
+	/**
+	 * Returns the pending write commands
+	 * @return The command queue
+	 */
+	public HeliosCommandQueue getCommandQueue() {
+		return this.commandQueue;
+	}
+
+	/**
+	 * Returns the scheduler tick, i.e. the largest interval all refresh intervals of this device are a multiple of
+	 * @return The tick (ms)
+	 */
+	public long getTick() {
+		return this.scheduler.getTick();
+	}
+
+	/**
+	 * Enables adaptive polling for all variables of this device: the interval of a variable grows while its
+	 * value does not change and snaps back to its refresh interval on a change - takes effect with the next
+	 * call of {@link #updateBindings(List)}
+	 * @param ceiling The largest interval (ms, 0 to poll variables without a maxRefresh option with a fixed interval)
+	 */
+	public void setAdaptiveCeiling(long ceiling) {
+		this.adaptiveCeiling = ceiling;
+	}
+
+	/**
+	 * Keeps the recent values of all numeric variables of this device in memory - takes effect with the next
+	 * call of {@link #updateBindings(List)}
+	 * @param historySize The number of values kept for variables without a history option (0 for none)
+	 */
+	public void setHistorySize(int historySize) {
+		this.historySize = historySize;
+	}
+
+	/**
+	 * Returns the history of a variable
+	 * @param variableName The variable name
+	 * @return The history or <tt>null</tt> if the values of the variable are not kept
+	 */
+	public HeliosHistory getHistory(String variableName) {
+		return this.histories.get(variableName);
+	}
+
+	/**
+	 * Sets the number of consecutive transport failures after which the device is considered unreachable -
+	 * must be called before {@link #start()}
+	 * @param threshold The threshold (0 to never suspend polling)
+	 */
+	public void setBreakerThreshold(int threshold) {
+		this.breaker = new HeliosCircuitBreaker(threshold);
+	}
+
+	/**
+	 * Sets the time budget of a poll cycle. Variables which do not fit into the budget are deferred to the next
+	 * cycle and read first there, so no variable starves.
+	 * @param budget The budget (ms, 0 for no limit or {@link #DEFAULT_CYCLE_BUDGET} for the scheduler tick)
+	 */
+	public void setCycleBudget(long budget) {
+		this.cycleBudget = budget;
+	}
+
+	/**
+	 * Sets the delay between a successful write and the refresh of the variables which depend on the written one
+	 * (see {@link HeliosVariableMap#getDependents(String)}), so the device can settle
+	 * @param delay The delay (ms, 0 to refresh the dependents with the next regular poll only)
+	 */
+	public void setDependentRefresh(long delay) {
+		this.dependentRefresh = delay;
+	}
+
+	/**
+	 * Enables reading back variables right after they have been written, so that the bound items show the
+	 * state confirmed by the device (e.g. a clamped value) without waiting for the next poll
+	 * @param readBack <tt>true</tt> to read back written variables
+	 */
+	public void setReadBack(boolean readBack) {
+		this.readBack = readBack;
+	}
+
+	/**
+	 * Returns the circuit breaker
+	 * @return The circuit breaker
+	 */
+	public HeliosCircuitBreaker getCircuitBreaker() {
+		return this.breaker;
+	}
+
+	/**
+	 * Returns the current refresh interval of a variable (which differs from the configured one for adaptively
+	 * polled variables)
+	 * @param variableName The variable name
+	 * @return The interval (ms, {@link HeliosScheduler#ONCE} for variables read once, -1 if the variable is not polled)
+	 */
+	public long getInterval(String variableName) {
+		return this.scheduler.getInterval(variableName);
+	}
+
+	/**
+	 * Rebuilds the variable index and the scheduler from the binding configs of the items bound to this
+	 * device. If a variable is bound to several items the shortest refresh interval (and ceiling) is used. Statistics items
+	 * are not polled but updated after each poll cycle. Items bound to a virtual variable cause its inputs to be polled.
+	 * Variables (and statistics of variables) which are not part of the catalog of the device's firmware are ignored.
+	 * @param configs The binding configs
+	 */
+	public void updateBindings(List<HeliosBindingConfig> configs) {
+		HeliosVariableMap vMap = this.heliosComm.getCatalog();
+		Map<String, List<HeliosBindingConfig>> index = new HashMap<String, List<HeliosBindingConfig>>();
+		Map<String, List<HeliosBindingConfig>> statistics = new HashMap<String, List<HeliosBindingConfig>>();
+		Map<String, Long> intervals = new HashMap<String, Long>();
+		Map<String, Long> ceilings = new HashMap<String, Long>();
+		Map<String, Double> deadbands = new HashMap<String, Double>();
+		Map<String, Integer> historySizes = new HashMap<String, Integer>();
+		Map<String, Virtual> virtuals = new HashMap<String, Virtual>();
+		for (HeliosBindingConfig config : configs) {
+			if (config.variableName.startsWith(HeliosDeviceStats.PREFIX)) {
+				String name = config.variableName.substring(HeliosDeviceStats.PREFIX.length());
+				if (!HeliosDeviceStats.isValidStatistic(name, vMap)) {
+					logger.warn("Helios device " + this + ": statistic " + config.variableName
+							+ " refers to a variable which is not part of the device's firmware catalog - item "
+							+ config.itemName + " is ignored");
+					continue;
+				}
+				List<HeliosBindingConfig> c = statistics.get(name);
+				if (c == null) {
+					c = new ArrayList<HeliosBindingConfig>();
+					statistics.put(name, c);
+				}
+				c.add(config);
+				continue;
+			}
+			HeliosExpression expression = vMap.getExpression(config.variableName);
+			if ((expression == null) && (vMap.getVariable(config.variableName) == null)) {
+				logger.warn("Helios device " + this + ": variable " + config.variableName
+						+ " is not part of the device's firmware catalog - item " + config.itemName + " is ignored");
+				continue;
+			}
+			String[] polled;
+			if (expression != null) {
+				// virtual variable: poll its inputs
+				Virtual virtual = virtuals.get(config.variableName);
+				if (virtual == null) {
+					virtual = new Virtual(config.variableName, expression);
+					virtuals.put(config.variableName, virtual);
+				}
+				virtual.configs.add(config);
+				polled = expression.getInputs();
+				for (String input : polled) {
+					if (!index.containsKey(input)) index.put(input, new ArrayList<HeliosBindingConfig>());
+				}
+			} else {
+				List<HeliosBindingConfig> c = index.get(config.variableName);
+				if (c == null) {
+					c = new ArrayList<HeliosBindingConfig>();
+					index.put(config.variableName, c);
+				}
+				c.add(config);
+				polled = new String[] { config.variableName };
+			}
+			Double deadband = deadbands.get(config.variableName);
+			if ((deadband == null) || (config.deadband.doubleValue() < deadband.doubleValue())) {
+				deadbands.put(config.variableName, config.deadband.doubleValue());
+			}
+			int historySize = config.historySize == HeliosGenericBindingProvider.DEFAULT_HISTORY ? this.historySize
+					: config.historySize;
+			Integer currentHistorySize = historySizes.get(config.variableName);
+			if ((currentHistorySize == null) || (historySize > currentHistorySize.intValue())) {
+				historySizes.put(config.variableName, historySize);
+			}
+
+			for (String variableName : polled) {
+				long interval = config.refreshInterval;
+				if (interval == HeliosGenericBindingProvider.DEFAULT_REFRESH) {
+					interval = vMap.isStatic(variableName) ? HeliosScheduler.ONCE : this.refreshInterval;
+				}
+				Long current = intervals.get(variableName);
+				if ((current == null) || (current.longValue() == HeliosScheduler.ONCE)
+						|| ((interval != HeliosScheduler.ONCE) && (interval < current.longValue()))) {
+					intervals.put(variableName, interval);
+				}
+
+				// adaptive polling: use the smallest ceiling of all items bound to the variable
+				long ceiling = config.maxRefreshInterval;
+				if (ceiling == HeliosGenericBindingProvider.DEFAULT_REFRESH) ceiling = this.adaptiveCeiling;
+				if (ceiling > 0) {
+					Long currentCeiling = ceilings.get(variableName);
+					if ((currentCeiling == null) || (ceiling < currentCeiling.longValue())) {
+						ceilings.put(variableName, ceiling);
+					}
+				}
+			}
+		}
+		Map<String, List<Virtual>> virtualsByInput = new HashMap<String, List<Virtual>>();
+		for (Virtual virtual : virtuals.values()) {
+			for (String input : virtual.expression.getInputs()) {
+				List<Virtual> v = virtualsByInput.get(input);
+				if (v == null) {
+					v = new ArrayList<Virtual>();
+					virtualsByInput.put(input, v);
+				}
+				v.add(virtual);
+			}
+		}
+		this.updateHistories(historySizes, vMap);
+		this.itemsByVariable = index;
+		this.virtuals = virtuals;
+		this.virtualsByInput = virtualsByInput;
+		this.statisticsItems = statistics;
+		this.deadbands = deadbands;
+		this.lastValues.clear(); // make sure new items receive the current value
+		this.lastStatistics.clear();
+		this.scheduler = new HeliosScheduler(intervals, ceilings, this.refreshInterval);
+		this.warmUp = !intervals.isEmpty();
+		logger.debug("Polling {} variable(s) of Helios device {} with a tick of {} ms", intervals.size(), this,
+				this.scheduler.getTick());
+	}
+
+	/**
+	 * Submits a poll cycle for the due variables to the device lane. If the previous cycle of this device is
+	 * still running (e.g. because the device does not respond) no further cycle is queued. While the circuit
+	 * breaker is open, cycles are only submitted when the next probe is due.
+	 * @param now The current time (ms)
+	 */
+	public void refresh(long now) {
+		ExecutorService lane = this.deviceLane;
+		if ((lane == null) || !this.breaker.isAllowed(now)) return;
+		final HeliosScheduler scheduler = this.scheduler;
+		if (!this.pollScheduled.compareAndSet(false, true)) {
+			logger.debug("Previous poll cycle of Helios device {} still running - skipping tick", this);
+			return;
+		}
+		final Set<String> due = scheduler.getDueVariables(now);
+		if (due.isEmpty() && this.deferred.isEmpty()) {
+			this.pollScheduled.set(false);
+			return;
+		}
+		final boolean warmUp = this.warmUp;
+		this.warmUp = false;
+		try {
+			lane.execute(new Runnable() {
+				public void run() {
+					try {
+						poll(due, scheduler, warmUp);
+					} finally {
+						pollScheduled.set(false);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			this.pollScheduled.set(false); // device is being stopped
+		}
+	}
+
+	/**
+	 * Reads the due variables and updates the bound items - must only be called on the device lane. Pending
+	 * commands are written before each read (or each batch of pipelined reads), so commands never wait for
+	 * more than one transaction (or batch). If the circuit breaker is open, a single variable is read as a probe
+	 * first and the cycle is aborted if the probe fails. If the breaker opens during the cycle, the remaining
+	 * variables are skipped. Variables deferred by the previous cycle are read first, once the cycle budget is
+	 * used up the remaining variables are deferred to the next cycle.
+	 * <p>
+	 * The first cycle after the bindings changed is a warm-up: all bound variables are due, the static identity
+	 * variables are read first and the cycle has no budget, so all items receive a value as fast as the device
+	 * allows. The regular schedule continues from there.
+	 * @param due The variables to be polled
+	 * @param scheduler The scheduler to notify about successful reads
+	 * @param warmUp <tt>true</tt> for the warm-up cycle
+	 */
+	private void poll(Set<String> due, HeliosScheduler scheduler, boolean warmUp) {
+		long start = System.nanoTime();
+		Map<String, List<HeliosBindingConfig>> itemsByVariable = this.itemsByVariable;
+		int connects = this.heliosComm.getConnectCount();
+		Set<String> ordered = new LinkedHashSet<String>();
+		String d;
+		while ((d = this.deferred.poll()) != null) {
+			ordered.add(d);
+		}
+		ordered.addAll(due);
+		List<String> names = new ArrayList<String>(ordered.size());
+		for (String variableName : ordered) {
+			if (itemsByVariable.containsKey(variableName)) names.add(variableName);
+		}
+		if (warmUp) {
+			// identity first, live values after them
+			HeliosVariableMap vMap = this.heliosComm.getCatalog();
+			List<String> live = new ArrayList<String>(names.size());
+			int statics = 0;
+			for (String variableName : names) {
+				if (vMap.isStatic(variableName)) names.set(statics++, variableName);
+				else live.add(variableName);
+			}
+			for (int i = 0; i < live.size(); i++) {
+				names.set(statics + i, live.get(i));
+			}
+		}
+		int dueCount = names.size();
+		long budget = warmUp ? 0 : this.cycleBudget == DEFAULT_CYCLE_BUDGET ? scheduler.getTick() : this.cycleBudget;
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(budget);
+		this.refreshedCount = 0;
+		if (this.breaker.isOpen() && !names.isEmpty()) {
+			String variableName = names.remove(0);
+			if (!this.probe(variableName, itemsByVariable.get(variableName), scheduler)) names.clear();
+		}
+		if (!names.isEmpty()) {
+			this.heliosComm.probePipelining();
+			// one batch on one connection, pending commands are written between the transactions
+			final long cycleBudget = budget;
+			final long cycleDeadline = deadline;
+			final Map<String, List<HeliosBindingConfig>> items = itemsByVariable;
+			final HeliosScheduler cycleScheduler = scheduler;
+			this.writePendingCommands();
+			HeliosSnapshot snapshot = this.heliosComm.readAll(names, this.snapshot, new HeliosSnapshot.Listener() {
+				@Override
+				public boolean batchRead(HeliosSnapshot snapshot, int from, int to) {
+					return HeliosDevice.this.batchRead(snapshot, from, to, items, cycleScheduler)
+							&& ((cycleBudget <= 0) || (System.nanoTime() - cycleDeadline < 0));
+				}
+			});
+			if (!this.breaker.isOpen() && (snapshot.getReadCount() < snapshot.size())) {
+				this.deferred.addAll(names.subList(snapshot.getReadCount(), names.size()));
+			}
+		}
+		if (this.heliosComm.getConnectCount() != connects) {
+			logger.debug("Reconnected to Helios device {} ({} connect(s) in total)", this, this.heliosComm.getConnectCount());
+		}
+		long duration = System.nanoTime() - start;
+		boolean overrun = (budget > 0) && (!this.deferred.isEmpty() || (duration > TimeUnit.MILLISECONDS.toNanos(budget)));
+		if (overrun && !this.overrun) {
+			logger.info("Poll cycle of Helios device {} exceeded its budget of {} ms - refreshed {} of {} variable(s), "
+					+ "deferring {}", this, budget, this.refreshedCount, dueCount, this.deferred.size());
+		} else if (overrun) {
+			logger.debug("Poll cycle of Helios device {} exceeded its budget of {} ms - refreshed {} of {} variable(s), "
+					+ "deferring {}", this, budget, this.refreshedCount, dueCount, this.deferred.size());
+		} else if (this.overrun) {
+			logger.info("Poll cycle of Helios device {} is within its budget of {} ms again", this, budget);
+		}
+		this.overrun = overrun;
+		if (warmUp) {
+			logger.info("Warm-up of Helios device {} read {} of {} variable(s) in {} ms", this, this.refreshedCount,
+					dueCount, TimeUnit.NANOSECONDS.toMillis(duration));
+		}
+		this.publishVirtuals();
+		this.heliosComm.getStatistics().recordCycle(duration, this.refreshedCount, dueCount, overrun);
+		this.publishStatistics();
+	}
+
+	/**
+	 * Publishes a batch of variables read in a poll cycle and writes the pending commands
+	 * @param snapshot The snapshot of the poll cycle
+	 * @param from The index of the first variable of the batch
+	 * @param to The index after the last variable of the batch
+	 * @param itemsByVariable The binding configs indexed by variable name
+	 * @param scheduler The scheduler to notify about successful reads
+	 * @return <tt>false</tt> if the circuit breaker has just been opened, i.e. the poll cycle has to be aborted
+	 */
+	private boolean batchRead(HeliosSnapshot snapshot, int from, int to,
+			Map<String, List<HeliosBindingConfig>> itemsByVariable, HeliosScheduler scheduler) {
+		boolean failed = false;
+		for (int i = from; i < to; i++) {
+			String variableName = snapshot.getName(i);
+			if (snapshot.getError(i) == null) {
+				this.publish(variableName, snapshot.getValue(i), itemsByVariable.get(variableName), scheduler);
+				this.refreshedCount++;
+			} else {
+				failed = true;
+				logger.info("Helios device " + this + ": " + snapshot.getError(i).getMessage());
+			}
+		}
+		if (this.recordResult(failed)) return false;
+		if (to < snapshot.size()) this.writePendingCommands();
+		return true;
+	}
+
+	/**
+	 * Reads a single variable to check whether the device is reachable again - closes the circuit breaker
+	 * if so, otherwise the next probe is deferred
+	 * @param variableName The variable name
+	 * @param configs The binding configs of the items bound to the variable
+	 * @param scheduler The scheduler to notify about a successful read
+	 * @return <tt>true</tt> if the device is reachable
+	 */
+	private boolean probe(String variableName, List<HeliosBindingConfig> configs, HeliosScheduler scheduler) {
+		try {
+			HeliosValue v = this.readValue;
+			this.heliosComm.getValue(variableName, v);
+			this.breaker.recordSuccess();
+			logger.info("Helios device {} is reachable again - resuming polling", this);
+			this.publish(variableName, v, configs, scheduler);
+			this.refreshedCount++;
+			return true;
+		} catch (HeliosException e) {
+			if (this.heliosComm.isConnected()) { // the device responded, only the request failed
+				this.breaker.recordSuccess();
+				logger.info("Helios device {} is reachable again - resuming polling", this);
+				return true;
+			}
+			this.breaker.recordFailure(System.currentTimeMillis());
+			logger.debug("Helios device {} is still unreachable ({}) - next probe in {} ms", this, e.getMessage(),
+					this.breaker.getProbeDelay());
+			return false;
+		}
+	}
+
+	/**
+	 * Records the result of a transaction (or batch) in the circuit breaker. Failures only count if the
+	 * connection was dropped, i.e. the device did not respond - if this opens the breaker, all bound items
+	 * are set to UNDEF.
+	 * @param failed <tt>true</tt> if the transaction (or at least one transaction of the batch) failed
+	 * @return <tt>true</tt> if the breaker has just been opened and the cycle has to be aborted
+	 */
+	private boolean recordResult(boolean failed) {
+		if (!failed || this.heliosComm.isConnected()) {
+			this.breaker.recordSuccess();
+			return false;
+		}
+		if (!this.breaker.recordFailure(System.currentTimeMillis())) return false;
+		logger.warn("Helios device {} is unreachable - suspending polling, next probe in {} ms", this,
+				this.breaker.getProbeDelay());
+		for (List<HeliosBindingConfig> configs : this.itemsByVariable.values()) {
+			for (HeliosBindingConfig config : configs) {
+				this.binding.postUpdate(config.itemName, UnDefType.UNDEF);
+			}
+		}
+		for (Virtual virtual : this.virtuals.values()) {
+			virtual.reset();
+			for (HeliosBindingConfig config : virtual.configs) {
+				this.binding.postUpdate(config.itemName, UnDefType.UNDEF);
+			}
+		}
+		this.lastValues.clear(); // publish the first values read after the device is reachable again
+		return true;
+	}
+
+	/**
+	 * Updates the statistics items whose value changed since they were last published
+	 */
+	private void publishStatistics() {
+		HeliosDeviceStats stats = this.heliosComm.getStatistics();
+		for (Map.Entry<String, List<HeliosBindingConfig>> e : this.statisticsItems.entrySet()) {
+			Double value = stats.getStatisticByName(e.getKey());
+			if ((value == null) || value.equals(this.lastStatistics.get(e.getKey()))) continue;
+			this.lastStatistics.put(e.getKey(), value);
+			for (HeliosBindingConfig config : e.getValue()) {
+				this.binding.postUpdate(config.itemName, new DecimalType(value.doubleValue()));
+			}
+		}
+	}
+	
+	/**
+	 * Updates all items bound to a variable which was read successfully. The value is published if it differs
+	 * from the last published value (by more than the dead-band for numeric values) or if the republish interval
+	 * elapsed.
+	 * @param variableName The variable name
+	 * @param v The value
+	 * @param configs The binding configs of the items bound to the variable
+	 * @param scheduler The scheduler to notify about the successful read
+	 */
+	private void publish(String variableName, HeliosValue v, List<HeliosBindingConfig> configs, HeliosScheduler scheduler) {
+		long now = System.currentTimeMillis();
+		PublishedValue last = this.lastValues.get(variableName);
+		boolean changed = this.isChanged(variableName, v, last);
+		if (last == null) {
+			last = new PublishedValue();
+			this.lastValues.put(variableName, last);
+		}
+		if (changed || ((this.republishInterval > 0) && (now - last.timestamp >= this.republishInterval))) {
+			last.value.set(v);
+			last.timestamp = now;
+			for (HeliosBindingConfig config : configs) {
+				this.binding.postUpdate(config.itemName, (State) HeliosBinding.toType(v, config.dataTypes));
+			}
+		}
+		HeliosHistory history = this.histories.get(variableName);
+		if ((history != null) && v.isNumeric()) history.add(now, v.doubleValue());
+		List<Virtual> virtuals = this.virtualsByInput.get(variableName);
+		if ((virtuals != null) && v.isNumeric()) {
+			double value = v.doubleValue();
+			for (int i = 0; i < virtuals.size(); i++) {
+				virtuals.get(i).set(variableName, value);
+			}
+		}
+		scheduler.markRead(variableName, changed);
+	}
+
+	/**
+	 * Evaluates the virtual variables whose inputs have been read since their last evaluation (once all inputs
+	 * have been read) and publishes them like {@link #publish(String, HeliosValue, List, HeliosScheduler)} -
+	 * a division by zero results in UNDEF
+	 */
+	private void publishVirtuals() {
+		long now = System.currentTimeMillis();
+		for (Virtual virtual : this.virtuals.values()) {
+			if (!virtual.dirty || (virtual.missing > 0)) continue;
+			virtual.dirty = false;
+			double value = virtual.expression.evaluate(virtual.inputs, virtual.stack);
+			boolean defined = !Double.isNaN(value) && !Double.isInfinite(value);
+			if (!defined) value = Double.NaN;
+			HeliosHistory history = this.histories.get(virtual.name);
+			if ((history != null) && defined) history.add(now, value);
+			boolean changed;
+			if ((virtual.published == null) || (defined != !virtual.published.isNaN())) {
+				changed = true;
+			} else {
+				Double deadband = this.deadbands.get(virtual.name);
+				changed = defined && (Math.abs(value - virtual.published.doubleValue()) > (deadband == null ? 0 : deadband.doubleValue()));
+			}
+			if (changed || ((this.republishInterval > 0) && (now - virtual.timestamp >= this.republishInterval))) {
+				virtual.published = value;
+				virtual.timestamp = now;
+				State state = defined ? new DecimalType(value) : UnDefType.UNDEF;
+				for (HeliosBindingConfig config : virtual.configs) {
+					this.binding.postUpdate(config.itemName, state);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a value differs from the last published value (by more than the dead-band for numeric values)
+	 * @param variableName The variable name
+	 * @param value The value read from the Helios device
+	 * @param last The value last published (or <tt>null</tt> if none was published yet)
+	 * @return <tt>true</tt> if the value changed
+	 */
+	private boolean isChanged(String variableName, HeliosValue value, PublishedValue last) {
+		if (last == null) return true;
+		if (value.isNumeric() && last.value.isNumeric()) {
+			Double deadband = this.deadbands.get(variableName);
+			return (deadband == null) || (deadband.doubleValue() == 0) ? !value.sameAs(last.value)
+					: Math.abs(value.doubleValue() - last.value.doubleValue()) > deadband.doubleValue();
+		}
+		return !value.sameAs(last.value);
+	}
+
+	/**
+	 * Queues a write command and schedules writing it on the device lane
+	 * @param variableName The variable name
+	 * @param value The new value
+	 * @return <tt>false</tt> if the command queue is full and the command was dropped
+	 */
+	public boolean sendCommand(String variableName, String value) {
+		// the item state may now differ from the device, so publish the next value read in any case
+		this.lastValues.remove(variableName);
+		boolean accepted = this.commandQueue.offer(variableName, value);
+		this.scheduleWriter();
+		return accepted;
+	}
+
+	/**
+	 * Submits a task writing the pending commands to the device lane unless such a task is already scheduled
+	 */
+	private void scheduleWriter() {
+		ExecutorService executor = this.deviceLane;
+		if ((executor == null) || (this.commandQueue.getDepth() == 0)) return;
+		if (this.writerScheduled.compareAndSet(false, true)) {
+			try {
+				executor.execute(new Runnable() {
+					public void run() {
+						writerScheduled.set(false);
+						writePendingCommands();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				this.writerScheduled.set(false); // executor is shutting down
+			}
+		}
+	}
+
+	/**
+	 * Writes all pending commands to the Helios device - must only be called on the device lane. While the
+	 * device is unreachable the commands are kept and written once it is reachable again. If read-back is
+	 * enabled, each variable is read again right after the write (even if the write was rejected) and the
+	 * value is published.
+	 */
+	private void writePendingCommands() {
+		if (this.breaker.isOpen()) return;
+		HeliosCommandQueue queue = this.commandQueue;
+		HeliosCommandQueue.Write write;
+		boolean written = false;
+		while ((write = queue.poll()) != null) {
+			try {
+				this.heliosComm.setValue(write.variableName, write.value);
+				this.scheduleDependents(write.variableName);
+			} catch (HeliosException e) {
+				logger.info("Helios device " + this + ": " + e.getMessage());
+			}
+			if (this.readBack && this.heliosComm.isConnected()) {
+				this.readBack(write.variableName);
+			}
+			written = true;
+		}
+		if (written) {
+			logger.debug("Command queue of Helios device {}: {} pending, {} accepted, {} coalesced, {} rejected", this,
+					queue.getDepth(), queue.getAcceptedCount(), queue.getCoalescedCount(), queue.getRejectedCount());
+		}
+	}
+
+	/**
+	 * Rebuilds the histories of the polled variables - histories whose size did not change keep their values
+	 * @param historySizes The history size of each variable (0 for none)
+	 * @param vMap The variable catalog
+	 */
+	private void updateHistories(Map<String, Integer> historySizes, HeliosVariableMap vMap) {
+		Map<String, HeliosHistory> old = this.histories;
+		Map<String, HeliosHistory> histories = new HashMap<String, HeliosHistory>();
+		for (Map.Entry<String, Integer> e : historySizes.entrySet()) {
+			int size = Math.min(e.getValue().intValue(), HeliosHistory.MAX_CAPACITY);
+			HeliosVariable v = vMap.getVariable(e.getKey()); // null for virtual variables
+			if ((size <= 0) || ((v != null) && (v.getType() == HeliosVariable.TYPE_STRING))) continue;
+			HeliosHistory history = old.get(e.getKey());
+			if ((history == null) || (history.getCapacity() != size)) history = new HeliosHistory(size);
+			histories.put(e.getKey(), history);
+			HeliosHistory.register(this.id, e.getKey(), history);
+		}
+		for (String variableName : old.keySet()) {
+			if (!histories.containsKey(variableName)) HeliosHistory.register(this.id, variableName, null);
+		}
+		this.histories = histories;
+	}
+
+	/**
+	 * Schedules the refresh of the bound variables which depend on a variable which has just been written - must
+	 * only be called on the device lane
+	 * @param variableName The name of the written variable
+	 */
+	private void scheduleDependents(String variableName) {
+		long delay = this.dependentRefresh;
+		if (delay <= 0) return;
+		Map<String, List<HeliosBindingConfig>> itemsByVariable = this.itemsByVariable;
+		Long due = System.currentTimeMillis() + delay;
+		boolean added = false;
+		for (String dependent : this.heliosComm.getCatalog().getDependents(variableName)) {
+			if (!itemsByVariable.containsKey(dependent)) continue;
+			this.dependentsDue.put(dependent, due);
+			added = true;
+		}
+		if (added && !this.dependentRefreshScheduled) this.scheduleDependentRefresh(delay);
+	}
+
+	/**
+	 * Schedules {@link #refreshDependents()} on the device lane
+	 * @param delay The delay (ms)
+	 */
+	private void scheduleDependentRefresh(long delay) {
+		ScheduledExecutorService lane = this.deviceLane;
+		if (lane == null) return;
+		try {
+			lane.schedule(new Runnable() {
+				public void run() {
+					refreshDependents();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+			this.dependentRefreshScheduled = true;
+		} catch (RejectedExecutionException e) {
+			// device is being stopped
+		}
+	}
+
+	/**
+	 * Reads the dependent variables which are due as one batch and publishes them - must only be called on the
+	 * device lane. Dependents of later writes are refreshed by a further run.
+	 */
+	private void refreshDependents() {
+		this.dependentRefreshScheduled = false;
+		long now = System.currentTimeMillis();
+		List<String> names = new ArrayList<String>();
+		long next = Long.MAX_VALUE;
+		for (Iterator<Map.Entry<String, Long>> it = this.dependentsDue.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, Long> e = it.next();
+			if (e.getValue().longValue() <= now) {
+				names.add(e.getKey());
+				it.remove();
+			} else {
+				next = Math.min(next, e.getValue().longValue());
+			}
+		}
+		if (!names.isEmpty() && !this.breaker.isOpen()) {
+			logger.debug("Refreshing {} variable(s) of Helios device {} after a write: {}", names.size(), this, names);
+			final Map<String, List<HeliosBindingConfig>> items = this.itemsByVariable;
+			final HeliosScheduler scheduler = this.scheduler;
+			this.heliosComm.readAll(names, this.snapshot, new HeliosSnapshot.Listener() {
+				@Override
+				public boolean batchRead(HeliosSnapshot snapshot, int from, int to) {
+					return HeliosDevice.this.batchRead(snapshot, from, to, items, scheduler);
+				}
+			});
+			this.publishVirtuals();
+		}
+		if (next != Long.MAX_VALUE) this.scheduleDependentRefresh(next - now);
+	}
+
+	/**
+	 * Reads a variable which has just been written and publishes its value - must only be called on the device lane
+	 * @param variableName The variable name
+	 */
+	private void readBack(String variableName) {
+		List<HeliosBindingConfig> configs = this.itemsByVariable.get(variableName);
+		HeliosVariable v = this.heliosComm.getCatalog().getVariable(variableName);
+		if ((configs == null) || (v == null) || (v.getAccess() == HeliosVariable.ACCESS_W)) return;
+		try {
+			HeliosValue value = this.readValue;
+			this.heliosComm.getValue(variableName, value);
+			this.publish(variableName, value, configs, this.scheduler);
+			this.publishVirtuals();
+		} catch (HeliosException e) {
+			logger.info("Helios device " + this + ": read-back failed - " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the device ID for logging
+	 * @return The ID (or 'default')
+	 */
+	@Override
+	public String toString() {
+		return DEFAULT_DEVICE.equals(this.id) ? "default" : this.id;
+	}
+}
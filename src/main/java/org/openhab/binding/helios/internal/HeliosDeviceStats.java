@@ -0,0 +1,322 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class holds the statistics of a Helios device: the transaction statistics of all variables (in total
+ * and per variable), the durations of the poll cycles and the number of connects. The statistics are exposed via
+ * JMX and can be bound to items with the reserved variable prefix {@link #PREFIX}, e.g.
+ * <code>helios="__stats.cycle_p99_ms"</code> for the device or <code>helios="__stats.fan_stage.total_p99_ms"</code>
+ * for a single variable.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosDeviceStats extends HeliosLatencyStats implements HeliosDeviceStatsMBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(HeliosDeviceStats.class);
+
+	/**
+	 * The prefix of the variable names of statistics items
+	 */
+	public static final String PREFIX = "__stats.";
+
+	/**
+	 * The JMX domain
+	 */
+	public static final String JMX_DOMAIN = "org.openhab.binding.helios";
+
+	/**
+	 * The names of the statistics of a variable which can be bound to items
+	 */
+	private static final Set<String> NAMES = new HashSet<String>();
+
+	/**
+	 * The names of the statistics which can only be bound for a device
+	 */
+	private static final Set<String> DEVICE_NAMES = new HashSet<String>();
+
+	static {
+		for (String s : new String[] { "p50_ms", "p99_ms", "max_ms" }) {
+			NAMES.add("write_" + s);
+			NAMES.add("read_" + s);
+			NAMES.add("total_" + s);
+			DEVICE_NAMES.add("cycle_" + s);
+		}
+		NAMES.add("success_count");
+		NAMES.add("failure_count");
+		DEVICE_NAMES.add("cycle_count");
+		DEVICE_NAMES.add("overrun_count");
+		DEVICE_NAMES.add("refreshed_fraction");
+		DEVICE_NAMES.add("connect_count");
+	}
+
+	/**
+	 * The transport whose connects are counted (or <tt>null</tt> if not known)
+	 */
+	private final HeliosTransport transport;
+
+	/**
+	 * Durations of the poll cycles (us)
+	 */
+	private final HeliosHistogram cycle = new HeliosHistogram();
+
+	/**
+	 * Duration of the last poll cycle (us)
+	 */
+	private volatile long lastCycle = 0;
+
+	/**
+	 * Number of poll cycles which exceeded their time budget
+	 */
+	private volatile long overrunCount = 0;
+
+	/**
+	 * Fraction of the due variables read successfully in the last poll cycle
+	 */
+	private volatile double refreshedFraction = 1.0;
+
+	/**
+	 * The statistics of each variable, indexed by variable name
+	 */
+	private final ConcurrentMap<String, HeliosLatencyStats> variables = new ConcurrentHashMap<String, HeliosLatencyStats>();
+
+	/**
+	 * The JMX name of the device's statistics (or <tt>null</tt> if not registered)
+	 */
+	private volatile String jmxName;
+
+	/**
+	 * Constructor to create the statistics of a device without a transport, i.e. without a connect count
+	 */
+	public HeliosDeviceStats() {
+		this(null);
+	}
+
+	/**
+	 * Constructor to create the statistics of a device
+	 * @param transport The transport of the device (its connects are counted)
+	 */
+	public HeliosDeviceStats(HeliosTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * Checks whether a statistics item's variable name is valid, without checking the variable of a per-variable
+	 * statistic - the catalog of the device is not known when the binding config is parsed
+	 * @param variableName The variable name without the prefix, e.g. 'cycle_p99_ms' or 'fan_stage.total_p99_ms'
+	 * @return <tt>true</tt> if valid
+	 */
+	public static boolean isValidStatistic(String variableName) {
+		int dot = variableName.lastIndexOf('.');
+		if (dot < 0) return NAMES.contains(variableName) || DEVICE_NAMES.contains(variableName);
+		return (dot > 0) && NAMES.contains(variableName.substring(dot + 1));
+	}
+
+	/**
+	 * Checks whether a statistics item's variable name is valid for a device
+	 * @param variableName The variable name without the prefix, e.g. 'cycle_p99_ms' or 'fan_stage.total_p99_ms'
+	 * @param vMap The catalog of the device
+	 * @return <tt>true</tt> if valid
+	 */
+	public static boolean isValidStatistic(String variableName, HeliosVariableMap vMap) {
+		if (!isValidStatistic(variableName)) return false;
+		int dot = variableName.lastIndexOf('.');
+		return (dot < 0) || (vMap.getVariable(variableName.substring(0, dot)) != null);
+	}
+
+	/**
+	 * Records a successful transaction
+	 * @param variableName The variable name
+	 * @param writeNanos Duration of the write phase (ns, negative if not applicable)
+	 * @param readNanos Duration of the read phase (ns, negative if not applicable)
+	 * @param totalNanos Duration of the whole transaction (ns)
+	 */
+	public void recordSuccess(String variableName, long writeNanos, long readNanos, long totalNanos) {
+		this.recordSuccess(writeNanos, readNanos, totalNanos);
+		this.getVariable(variableName).recordSuccess(writeNanos, readNanos, totalNanos);
+	}
+
+	/**
+	 * Records a failed transaction
+	 * @param variableName The variable name
+	 */
+	public void recordFailure(String variableName) {
+		this.recordFailure();
+		this.getVariable(variableName).recordFailure();
+	}
+
+	/**
+	 * Records a poll cycle
+	 * @param nanos The duration (ns)
+	 * @param refreshed The number of variables read successfully
+	 * @param due The number of variables due in this cycle (including those deferred from the previous one)
+	 * @param overrun <tt>true</tt> if the cycle exceeded its time budget
+	 */
+	public void recordCycle(long nanos, int refreshed, int due, boolean overrun) {
+		this.lastCycle = nanos / 1000;
+		this.cycle.record(this.lastCycle);
+		this.refreshedFraction = due == 0 ? 1.0 : (double) refreshed / due;
+		if (overrun) this.overrunCount++;
+	}
+
+	/**
+	 * Returns the statistics of a variable (creating them on first use)
+	 * @param variableName The variable name
+	 * @return The statistics
+	 */
+	public HeliosLatencyStats getVariable(String variableName) {
+		HeliosLatencyStats s = this.variables.get(variableName);
+		if (s == null) {
+			HeliosLatencyStats created = new HeliosLatencyStats();
+			s = this.variables.putIfAbsent(variableName, created);
+			if (s == null) {
+				s = created;
+				String name = this.jmxName;
+				if (name != null) register(s, name + ",variable=" + ObjectName.quote(variableName));
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Returns a statistic by name
+	 * @param variableName The variable name without the prefix, e.g. 'cycle_p99_ms' or 'fan_stage.total_p99_ms'
+	 * @return The value (or <tt>null</tt> if the name is unknown)
+	 */
+	public Double getStatisticByName(String variableName) {
+		int dot = variableName.lastIndexOf('.');
+		if (dot >= 0) {
+			HeliosLatencyStats s = this.variables.get(variableName.substring(0, dot));
+			return s == null ? null : s.getStatistic(variableName.substring(dot + 1));
+		}
+		if (variableName.equals("cycle_count")) return Double.valueOf(this.cycle.getCount());
+		if (variableName.equals("overrun_count")) return Double.valueOf(this.overrunCount);
+		if (variableName.equals("refreshed_fraction")) return Double.valueOf(this.refreshedFraction);
+		if (variableName.equals("connect_count")) return Double.valueOf(this.getConnectCount());
+		if (variableName.startsWith("cycle_")) return getStatistic(this.cycle, variableName.substring(6));
+		return this.getStatistic(variableName);
+	}
+
+	/**
+	 * Registers the statistics of the device and its variables with the platform MBean server
+	 * @param deviceId The device ID
+	 */
+	public void register(String deviceId) {
+		String name = JMX_DOMAIN + ":type=Device,device="
+				+ ObjectName.quote(HeliosDevice.DEFAULT_DEVICE.equals(deviceId) ? "default" : deviceId);
+		this.jmxName = name;
+		register(this, name);
+		for (Map.Entry<String, HeliosLatencyStats> e : this.variables.entrySet()) {
+			register(e.getValue(), name + ",variable=" + ObjectName.quote(e.getKey()));
+		}
+	}
+
+	/**
+	 * Unregisters the statistics of the device and its variables from the platform MBean server
+	 */
+	public void unregister() {
+		String name = this.jmxName;
+		if (name == null) return;
+		this.jmxName = null;
+		unregister(name);
+		for (String variableName : this.variables.keySet()) {
+			unregister(name + ",variable=" + ObjectName.quote(variableName));
+		}
+	}
+
+	/**
+	 * Registers an MBean, replacing an MBean registered under the same name
+	 */
+	private static void register(Object mbean, String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = new ObjectName(name);
+			if (server.isRegistered(on)) server.unregisterMBean(on);
+			server.registerMBean(mbean, on);
+		} catch (Exception e) {
+			logger.debug("Registering MBean " + name + " failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Unregisters an MBean
+	 */
+	private static void unregister(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName on = new ObjectName(name);
+			if (server.isRegistered(on)) server.unregisterMBean(on);
+		} catch (Exception e) {
+			logger.debug("Unregistering MBean " + name + " failed: " + e.getMessage());
+		}
+	}
+
+	public long getCycleCount() {
+		return this.cycle.getCount();
+	}
+
+	public double getCycleP50Ms() {
+		return toMs(this.cycle.getPercentile(50));
+	}
+
+	public double getCycleP99Ms() {
+		return toMs(this.cycle.getPercentile(99));
+	}
+
+	public double getCycleMaxMs() {
+		return toMs(this.cycle.getMax());
+	}
+
+	public double getLastCycleMs() {
+		return toMs(this.lastCycle);
+	}
+
+	public long getOverrunCount() {
+		return this.overrunCount;
+	}
+
+	public double getRefreshedFraction() {
+		return this.refreshedFraction;
+	}
+
+	public int getConnectCount() {
+		// counted by the transport, so reset() does not clear it
+		return this.transport == null ? 0 : this.transport.getConnectCount();
+	}
+
+	public String[] getVariableNames() {
+		return this.variables.keySet().toArray(new String[0]);
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		this.cycle.reset();
+		this.lastCycle = 0;
+		this.overrunCount = 0;
+		this.refreshedFraction = 1.0;
+		for (HeliosLatencyStats s : this.variables.values()) {
+			s.reset();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * JMX interface of the statistics of a Helios device (the transactions of all variables and the poll cycles).
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public interface HeliosDeviceStatsMBean extends HeliosLatencyStatsMBean {
+
+	long getCycleCount();
+
+	double getCycleP50Ms();
+
+	double getCycleP99Ms();
+
+	double getCycleMaxMs();
+
+	double getLastCycleMs();
+
+	long getOverrunCount();
+
+	double getRefreshedFraction();
+
+	int getConnectCount();
+
+	String[] getVariableNames();
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is the compiled expression of a virtual variable, i.e. a variable computed from the values of
+ * other variables (e.g. <code>filter_change_remaining_time / 60 / 24</code>). Expressions consist of numbers,
+ * variable names, the operators <code>+ - * /</code> and parentheses. Variable names containing other characters
+ * than letters, digits and <code>_</code> have to be quoted, e.g. <code>"party-mode_remaining_time" / 60</code>
+ * (unquoted the <code>-</code> would be a subtraction). They are compiled once into postfix code, the
+ * evaluation doesn't allocate. An expression is immutable and can be shared between devices.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosExpression {
+
+	/**
+	 * Op codes of the postfix code - PUSH_CONSTANT and PUSH_INPUT are followed by the index of the operand
+	 */
+	private static final int PUSH_CONSTANT = 0;
+	private static final int PUSH_INPUT = 1;
+	private static final int ADD = 2;
+	private static final int SUBTRACT = 3;
+	private static final int MULTIPLY = 4;
+	private static final int DIVIDE = 5;
+	private static final int NEGATE = 6;
+
+	/**
+	 * The expression as defined
+	 */
+	private final String text;
+
+	/**
+	 * The names of the input variables (each only once)
+	 */
+	private final String[] inputs;
+
+	/**
+	 * The constants
+	 */
+	private final double[] constants;
+
+	/**
+	 * The postfix code
+	 */
+	private final int[] code;
+
+	/**
+	 * The stack size required for the evaluation
+	 */
+	private final int stackSize;
+
+	/**
+	 * Constructor to compile an expression
+	 * @param text The expression
+	 * @throws IllegalArgumentException If the expression is invalid
+	 */
+	public HeliosExpression(String text) throws IllegalArgumentException {
+		Compiler compiler = new Compiler(text);
+		compiler.expression();
+		if (compiler.peek() != 0) compiler.fail("unexpected '" + compiler.peek() + "'");
+		this.text = text.trim();
+		this.inputs = compiler.inputs.toArray(new String[compiler.inputs.size()]);
+		this.constants = new double[compiler.constants.size()];
+		for (int i = 0; i < this.constants.length; i++) {
+			this.constants[i] = compiler.constants.get(i).doubleValue();
+		}
+		this.code = new int[compiler.code.size()];
+		for (int i = 0; i < this.code.length; i++) {
+			this.code[i] = compiler.code.get(i).intValue();
+		}
+		this.stackSize = compiler.maxDepth;
+	}
+
+	/**
+	 * Returns the names of the variables the expression is computed from
+	 * @return The input names (must not be modified)
+	 */
+	public String[] getInputs() {
+		return this.inputs;
+	}
+
+	/**
+	 * Returns the stack size required by {@link #evaluate(double[], double[])}
+	 * @return The stack size
+	 */
+	public int getStackSize() {
+		return this.stackSize;
+	}
+
+	/**
+	 * Evaluates the expression
+	 * @param inputs The values of the input variables (in the order of {@link #getInputs()})
+	 * @param stack The evaluation stack (at least {@link #getStackSize()} elements, reused to avoid allocations)
+	 * @return The result (<tt>NaN</tt> or infinite on a division by zero)
+	 */
+	public double evaluate(double[] inputs, double[] stack) {
+		int sp = 0;
+		for (int pc = 0; pc < this.code.length; pc++) {
+			switch (this.code[pc]) {
+				case PUSH_CONSTANT:
+					stack[sp++] = this.constants[this.code[++pc]];
+					break;
+				case PUSH_INPUT:
+					stack[sp++] = inputs[this.code[++pc]];
+					break;
+				case ADD:
+					sp--;
+					stack[sp - 1] += stack[sp];
+					break;
+				case SUBTRACT:
+					sp--;
+					stack[sp - 1] -= stack[sp];
+					break;
+				case MULTIPLY:
+					sp--;
+					stack[sp - 1] *= stack[sp];
+					break;
+				case DIVIDE:
+					sp--;
+					stack[sp - 1] /= stack[sp];
+					break;
+				case NEGATE:
+					stack[sp - 1] = -stack[sp - 1];
+					break;
+			}
+		}
+		return stack[0];
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return this.text;
+	}
+
+	/**
+	 * Recursive descent compiler translating an expression into postfix code
+	 */
+	private static class Compiler {
+
+		private final String text;
+		private int pos = 0;
+		private int depth = 0;
+		private int maxDepth = 0;
+		private final List<String> inputs = new ArrayList<String>();
+		private final List<Double> constants = new ArrayList<Double>();
+		private final List<Integer> code = new ArrayList<Integer>();
+
+		private Compiler(String text) {
+			this.text = text;
+		}
+
+		/**
+		 * expression := term (('+' | '-') term)*
+		 */
+		private void expression() {
+			this.term();
+			for (char c = this.peek(); (c == '+') || (c == '-'); c = this.peek()) {
+				this.pos++;
+				this.term();
+				this.emit(c == '+' ? ADD : SUBTRACT, -1);
+			}
+		}
+
+		/**
+		 * term := factor (('*' | '/') factor)*
+		 */
+		private void term() {
+			this.factor();
+			for (char c = this.peek(); (c == '*') || (c == '/'); c = this.peek()) {
+				this.pos++;
+				this.factor();
+				this.emit(c == '*' ? MULTIPLY : DIVIDE, -1);
+			}
+		}
+
+		/**
+		 * factor := '-' factor | '(' expression ')' | number | variable | '"' variable '"'
+		 */
+		private void factor() {
+			char c = this.peek();
+			if (c == '-') {
+				this.pos++;
+				this.factor();
+				this.emit(NEGATE, 0);
+			} else if (c == '(') {
+				this.pos++;
+				this.expression();
+				if (this.peek() != ')') this.fail("missing ')'");
+				this.pos++;
+			} else if (Character.isDigit(c) || (c == '.')) {
+				int start = this.pos;
+				while ((this.pos < this.text.length())
+						&& (Character.isDigit(this.text.charAt(this.pos)) || (this.text.charAt(this.pos) == '.'))) {
+					this.pos++;
+				}
+				try {
+					this.constants.add(Double.valueOf(this.text.substring(start, this.pos)));
+				} catch (NumberFormatException e) {
+					this.fail("invalid number '" + this.text.substring(start, this.pos) + "'");
+				}
+				this.code.add(PUSH_CONSTANT);
+				this.emit(this.constants.size() - 1, 1);
+			} else if (c == '"') {
+				int start = ++this.pos;
+				while ((this.pos < this.text.length()) && (this.text.charAt(this.pos) != '"')) {
+					this.pos++;
+				}
+				if (this.pos == this.text.length()) this.fail("missing '\"'");
+				String name = this.text.substring(start, this.pos).trim();
+				if (name.length() == 0) this.fail("empty variable name");
+				this.pos++;
+				this.input(name);
+			} else if (Character.isLetter(c) || (c == '_')) {
+				int start = this.pos;
+				while ((this.pos < this.text.length())
+						&& (Character.isLetterOrDigit(this.text.charAt(this.pos)) || (this.text.charAt(this.pos) == '_'))) {
+					this.pos++;
+				}
+				this.input(this.text.substring(start, this.pos));
+			} else {
+				this.fail(this.pos < this.text.length() ? "unexpected '" + c + "'" : "unexpected end");
+			}
+		}
+
+		/**
+		 * Appends the code pushing an input variable
+		 * @param name The variable name
+		 */
+		private void input(String name) {
+			int index = this.inputs.indexOf(name);
+			if (index < 0) {
+				this.inputs.add(name);
+				index = this.inputs.size() - 1;
+			}
+			this.code.add(PUSH_INPUT);
+			this.emit(index, 1);
+		}
+
+		/**
+		 * Appends an op code (or operand) and tracks the stack depth
+		 * @param op The op code or operand
+		 * @param change The change of the stack depth
+		 */
+		private void emit(int op, int change) {
+			this.code.add(op);
+			this.depth += change;
+			this.maxDepth = Math.max(this.maxDepth, this.depth);
+		}
+
+		/**
+		 * Skips white space and returns the next character
+		 * @return The character (0 at the end)
+		 */
+		private char peek() {
+			while ((this.pos < this.text.length()) && Character.isWhitespace(this.text.charAt(this.pos))) this.pos++;
+			return this.pos < this.text.length() ? this.text.charAt(this.pos) : 0;
+		}
+
+		private void fail(String message) {
+			throw new IllegalArgumentException("Invalid expression '" + this.text.trim() + "': " + message);
+		}
+	}
+}
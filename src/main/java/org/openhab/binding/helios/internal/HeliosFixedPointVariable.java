@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.math.BigDecimal;
+
+/**
+ * This class represents a fixed-point variable of the Helios modbus (e.g. a temperature with one decimal),
+ * optionally with a range. The bounds are kept as unscaled values, so values can be checked without
+ * converting them to floating point.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosFixedPointVariable extends HeliosVariable {
+
+	/**
+	 * Flag indicating the variable has a range
+	 */
+	private final boolean bounded;
+
+	/**
+	 * The unscaled minimum value
+	 */
+	private final long minUnscaled;
+
+	/**
+	 * The number of digits after the decimal point of the minimum value
+	 */
+	private final int minScale;
+
+	/**
+	 * The unscaled maximum value
+	 */
+	private final long maxUnscaled;
+
+	/**
+	 * The number of digits after the decimal point of the maximum value
+	 */
+	private final int maxScale;
+
+	/**
+	 * Constructor to set the member variables (without a range)
+	 * @param variable The variable's number
+	 * @param access Access possibilities
+	 * @param length Length
+	 * @param count Count
+	 */
+	public HeliosFixedPointVariable(int variable, int access, int length, int count) {
+		super(variable, access, length, count, TYPE_FLOAT);
+		this.bounded = false;
+		this.minUnscaled = 0;
+		this.minScale = 0;
+		this.maxUnscaled = 0;
+		this.maxScale = 0;
+	}
+
+	/**
+	 * Constructor to set the member variables
+	 * @param variable The variable's number
+	 * @param access Access possibilities
+	 * @param length Length
+	 * @param count Count
+	 * @param minVal Minimum value
+	 * @param maxVal Maximum value
+	 */
+	public HeliosFixedPointVariable(int variable, int access, int length, int count, double minVal, double maxVal) {
+		super(variable, access, length, count, TYPE_FLOAT);
+		BigDecimal min = BigDecimal.valueOf(minVal);
+		BigDecimal max = BigDecimal.valueOf(maxVal);
+		this.bounded = true;
+		this.minUnscaled = min.unscaledValue().longValue();
+		this.minScale = min.scale();
+		this.maxUnscaled = max.unscaledValue().longValue();
+		this.maxScale = max.scale();
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public boolean accepts(HeliosValue value) {
+		if (!value.isValid() || !value.isNumeric()) return false;
+		return !this.bounded
+				|| ((value.compareTo(this.minUnscaled, this.minScale) >= 0) && (value.compareTo(this.maxUnscaled, this.maxScale) <= 0));
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public String getMinString() {
+		return this.bounded ? this.getMinVal().toPlainString() : null;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public String getMaxString() {
+		return this.bounded ? this.getMaxVal().toPlainString() : null;
+	}
+
+	/**
+	 * Returns whether the variable has a range
+	 * @return <tt>true</tt> if bounded
+	 */
+	public boolean isBounded() {
+		return this.bounded;
+	}
+
+	/**
+	 * Getter for minimum value
+	 * @return minimum value
+	 */
+	public BigDecimal getMinVal() {
+		return BigDecimal.valueOf(this.minUnscaled, this.minScale);
+	}
+
+	/**
+	 * Getter for maximum value
+	 * @return maximum value
+	 */
+	public BigDecimal getMaxVal() {
+		return BigDecimal.valueOf(this.maxUnscaled, this.maxScale);
+	}
+}
@@ -8,9 +8,13 @@
  */
 package org.openhab.binding.helios.internal;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.openhab.binding.helios.HeliosBindingProvider;
+import org.openhab.binding.helios.HeliosHistory;
 import org.openhab.core.binding.BindingConfig;
 import org.openhab.core.items.Item;
 import org.openhab.core.types.State;
@@ -20,13 +24,61 @@ import org.openhab.model.item.binding.BindingConfigParseException;
 
 
 /**
- * This class is responsible for parsing the binding configuration.
+ * This class is responsible for parsing the binding configuration. The binding configuration consists of
+ * the variable name optionally followed by comma separated options, e.g. <code>helios="fan_stage,refresh=5s"</code>.
+ * If several Helios devices are configured, the variable name is prefixed with the device ID, e.g.
+ * <code>helios="unitA:fan_stage"</code> for the device configured by <code>helios:unitA.host</code>. Without
+ * a prefix the item is bound to the device configured by <code>helios:host</code>. The variable name is checked
+ * against the catalog of the device's firmware once the device is known, items bound to unknown variables are
+ * ignored with a warning.
+ * <p>
+ * Number items can be bound to the transaction statistics of a device with the variable name
+ * <code>__stats.&lt;statistic&gt;</code> (e.g. <code>helios="__stats.cycle_p99_ms"</code>) or to those of a single
+ * variable with <code>__stats.&lt;variable&gt;.&lt;statistic&gt;</code> (e.g.
+ * <code>helios="__stats.fan_stage.total_p99_ms"</code>). The statistics are <code>success_count</code>,
+ * <code>failure_count</code> and <code>write_</code>, <code>read_</code> or <code>total_</code> followed by
+ * <code>p50_ms</code>, <code>p99_ms</code> or <code>max_ms</code>; devices additionally provide
+ * <code>cycle_count</code>, <code>cycle_p50_ms</code>, <code>cycle_p99_ms</code>, <code>cycle_max_ms</code>,
+ * <code>overrun_count</code>, <code>refreshed_fraction</code> and <code>connect_count</code>.
+ * They are updated after each poll cycle and also available via JMX.
+ * <p>
+ * Items can also be bound to virtual variables which are computed by the binding from other variables as soon as
+ * these have been read (e.g. <code>helios="heat_recovery_efficiency"</code>), see {@link HeliosVariableMap}.
+ * The <code>refresh</code> and <code>maxRefresh</code> options of such an item apply to the variables it is computed from.
+ * <ul>
+ * <li><code>refresh</code>: the refresh interval of the variable (e.g. <code>500ms</code>, <code>5s</code>,
+ * <code>10m</code>, <code>1h</code> or <code>once</code> to read the variable only once at startup)
+ * <li><code>maxRefresh</code>: polls the variable adaptively - its interval doubles after several reads without
+ * a change up to this value and snaps back to the refresh interval as soon as the value changes (e.g.
+ * <code>maxRefresh=30m</code>, see also the binding option <code>adaptiveCeiling</code>)
+ * <li><code>deadband</code>: numeric values are only published if they differ by more than this value from
+ * the last published value (e.g. <code>deadband=0.5</code>)
+ * <li><code>history</code>: keeps this number of recent values of a numeric variable in memory, they can be
+ * queried with {@link org.openhab.binding.helios.HeliosHistory} (e.g. <code>history=720</code>, see also the
+ * binding option <code>history</code>)
+ * </ul>
  * 
  * @author Bernhard Bauer
  * @since 1.8.0
  */
 public class HeliosGenericBindingProvider extends AbstractGenericBindingProvider implements HeliosBindingProvider {
 
+	/**
+	 * Refresh interval of items without a refresh option - static variables are read once, all others
+	 * use the binding's refresh interval
+	 */
+	public static final long DEFAULT_REFRESH = -1;
+	
+	/**
+	 * History size of items without a history option - the device's history size is used
+	 */
+	public static final int DEFAULT_HISTORY = -1;
+	
+	/**
+	 * Pattern for intervals, e.g. '5s'
+	 */
+	private static final Pattern INTERVAL_PATTERN = Pattern.compile("(\\d+)\\s*(ms|s|m|h|)");
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -52,11 +104,97 @@ public class HeliosGenericBindingProvider extends AbstractGenericBindingProvider
 	public void processBindingConfiguration(String context, Item item, String bindingConfig) throws BindingConfigParseException {
 		super.processBindingConfiguration(context, item, bindingConfig);
 		HeliosBindingConfig config = new HeliosBindingConfig();
-		config.variableName = bindingConfig;
+		config.itemName = item.getName();
+		String[] parts = bindingConfig.split(",");
+		String variable = parts[0].trim();
+		int colon = variable.indexOf(':');
+		if (colon >= 0) {
+			config.deviceId = variable.substring(0, colon).trim();
+			variable = variable.substring(colon + 1).trim();
+			if (config.deviceId.length() == 0) {
+				throw new BindingConfigParseException("item '" + item.getName() + "': empty Helios device ID");
+			}
+		}
+		config.variableName = variable;
+		if (variable.startsWith(HeliosDeviceStats.PREFIX)) {
+			if (!HeliosDeviceStats.isValidStatistic(variable.substring(HeliosDeviceStats.PREFIX.length()))) {
+				throw new BindingConfigParseException("item '" + item.getName() + "' is bound to the unknown Helios statistic '"
+						+ variable + "'");
+			}
+		} else if (variable.length() == 0) {
+			throw new BindingConfigParseException("item '" + item.getName() + "': empty Helios variable name");
+		}
+		for (int i = 1; i < parts.length; i++) {
+			String[] option = parts[i].split("=", 2);
+			if (option.length != 2) {
+				throw new BindingConfigParseException("item '" + item.getName() + "': invalid option '" + parts[i].trim() + "'");
+			}
+			String key = option[0].trim();
+			String value = option[1].trim();
+			if (key.equals("refresh")) {
+				config.refreshInterval = parseInterval(value);
+			} else if (key.equals("maxRefresh")) {
+				config.maxRefreshInterval = parseInterval(value);
+				if (config.maxRefreshInterval == HeliosScheduler.ONCE) {
+					throw new BindingConfigParseException("item '" + item.getName() + "': invalid maxRefresh '" + value + "'");
+				}
+			} else if (key.equals("deadband")) {
+				try {
+					config.deadband = new BigDecimal(value).abs();
+				} catch (NumberFormatException e) {
+					throw new BindingConfigParseException("item '" + item.getName() + "': invalid deadband '" + value + "'");
+				}
+			} else if (key.equals("history")) {
+				try {
+					config.historySize = Integer.parseInt(value);
+				} catch (NumberFormatException e) {
+					config.historySize = -1;
+				}
+				if ((config.historySize < 0) || (config.historySize > HeliosHistory.MAX_CAPACITY)) {
+					throw new BindingConfigParseException("item '" + item.getName() + "': invalid history '" + value + "'");
+				}
+				// variables only known to the catalog of the device are checked by the device
+				HeliosVariable v = HeliosVariableMap.getInstance().getVariable(config.variableName);
+				if ((v != null) && (v.getType() == HeliosVariable.TYPE_STRING)) {
+					throw new BindingConfigParseException("item '" + item.getName() + "': history requires a numeric variable");
+				}
+			} else {
+				throw new BindingConfigParseException("item '" + item.getName() + "': unknown option '" + key + "'");
+			}
+		}
 		config.dataTypes = item.getAcceptedDataTypes();
 		addBindingConfig(item, config);
 	}
 	
+	/**
+	 * Parses an interval
+	 * @param interval The interval (e.g. '500ms', '5s', '10m', '1h', 'once' or a plain number of milliseconds)
+	 * @return The interval in ms ({@link HeliosScheduler#ONCE} for 'once')
+	 * @throws BindingConfigParseException
+	 */
+	static long parseInterval(String interval) throws BindingConfigParseException {
+		if (interval.equalsIgnoreCase("once")) return HeliosScheduler.ONCE;
+		Matcher m = INTERVAL_PATTERN.matcher(interval);
+		if (!m.matches()) {
+			throw new BindingConfigParseException("invalid interval '" + interval + "'");
+		}
+		long value;
+		try {
+			value = Long.parseLong(m.group(1));
+		} catch (NumberFormatException e) {
+			throw new BindingConfigParseException("invalid interval '" + interval + "'");
+		}
+		String unit = m.group(2);
+		long factor = 1;
+		if (unit.equals("s")) factor = 1000;
+		else if (unit.equals("m")) factor = 60000;
+		else if (unit.equals("h")) factor = 3600000;
+		if ((value <= 0) || (value > Long.MAX_VALUE / factor)) {
+			throw new BindingConfigParseException("invalid interval '" + interval + "'");
+		}
+		return value * factor;
+	}
+	
 	
 	/**
 	 * This is a helper class holding binding specific configuration details
@@ -65,7 +203,18 @@ public class HeliosGenericBindingProvider extends AbstractGenericBindingProvider
 	 * @since 1.8.0
 	 */
 	public class HeliosBindingConfig implements BindingConfig {
+		public String itemName;
+		/** the ID of the Helios device ({@link HeliosDevice#DEFAULT_DEVICE} if not qualified) */
+		public String deviceId = HeliosDevice.DEFAULT_DEVICE;
 		public String variableName;
+		/** the refresh interval (ms), {@link HeliosScheduler#ONCE} or {@link #DEFAULT_REFRESH} */
+		public long refreshInterval = DEFAULT_REFRESH;
+		/** the ceiling of the adaptive refresh interval (ms) or {@link #DEFAULT_REFRESH} */
+		public long maxRefreshInterval = DEFAULT_REFRESH;
+		/** numeric changes up to this value are not published */
+		public BigDecimal deadband = BigDecimal.ZERO;
+		/** the number of values kept in memory, 0 for none or {@link #DEFAULT_HISTORY} */
+		public int historySize = DEFAULT_HISTORY;
 		public List<Class<? extends State>> dataTypes;
 	}
 	
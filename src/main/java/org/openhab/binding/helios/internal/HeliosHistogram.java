@@ -0,0 +1,130 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * This class is a compact latency histogram with log-linear buckets: each power of two is split into 8
+ * buckets, so percentiles are exact to 12.5%. Recording is a few arithmetic operations on a fixed array and
+ * does not allocate. Values are recorded by a single thread (the device lane), readers may see a snapshot
+ * which is slightly inconsistent.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosHistogram {
+
+	/**
+	 * Number of bits used for the buckets within a power of two
+	 */
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/**
+	 * Number of buckets within a power of two
+	 */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The largest power of two tracked, larger values are counted in the last bucket
+	 */
+	private static final int MAX_EXPONENT = 40;
+
+	/**
+	 * The largest value with a bucket of its own
+	 */
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+	/**
+	 * The bucket counts
+	 */
+	private final int[] counts = new int[(MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS];
+
+	/**
+	 * The number of values recorded
+	 */
+	private volatile long count = 0;
+
+	/**
+	 * The largest value recorded
+	 */
+	private volatile long max = 0;
+
+	/**
+	 * Records a value
+	 * @param value The value (negative values are ignored)
+	 */
+	public void record(long value) {
+		if (value < 0) return;
+		this.counts[index(Math.min(value, MAX_VALUE))]++;
+		if (value > this.max) this.max = value;
+		this.count++;
+	}
+
+	/**
+	 * Returns the number of values recorded
+	 * @return The count
+	 */
+	public long getCount() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the largest value recorded
+	 * @return The maximum (0 if no value was recorded)
+	 */
+	public long getMax() {
+		return this.max;
+	}
+
+	/**
+	 * Returns a percentile, i.e. the upper bound of the bucket holding the value at the given rank
+	 * @param percentile The percentile (e.g. 99.0)
+	 * @return The value (0 if no value was recorded)
+	 */
+	public long getPercentile(double percentile) {
+		long n = this.count;
+		if (n == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+		long seen = 0;
+		for (int i = 0; i < this.counts.length; i++) {
+			seen += this.counts[i];
+			if (seen >= rank) return Math.min(upperBound(i), this.max);
+		}
+		return this.max;
+	}
+
+	/**
+	 * Discards all values
+	 */
+	public void reset() {
+		for (int i = 0; i < this.counts.length; i++) this.counts[i] = 0;
+		this.count = 0;
+		this.max = 0;
+	}
+
+	/**
+	 * Returns the bucket of a value
+	 */
+	private static int index(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Returns the largest value of a bucket
+	 */
+	private static long upperBound(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		int sub = index % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BUCKET_BITS);
+		return ((SUB_BUCKETS + sub) * width) + width - 1;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * This class represents an integer variable of the Helios modbus, optionally with a range.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosIntegerVariable extends HeliosVariable {
+
+	/**
+	 * Flag indicating the variable has a range
+	 */
+	private final boolean bounded;
+
+	/**
+	 * The minimum value
+	 */
+	private final int minVal;
+
+	/**
+	 * The maximum value
+	 */
+	private final int maxVal;
+
+	/**
+	 * Constructor to set the member variables (without a range)
+	 * @param variable The variable's number
+	 * @param access Access possibilities
+	 * @param length Length
+	 * @param count Count
+	 */
+	public HeliosIntegerVariable(int variable, int access, int length, int count) {
+		super(variable, access, length, count, TYPE_INTEGER);
+		this.bounded = false;
+		this.minVal = Integer.MIN_VALUE;
+		this.maxVal = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Constructor to set the member variables
+	 * @param variable The variable's number
+	 * @param access Access possibilities
+	 * @param length Length
+	 * @param count Count
+	 * @param minVal Minimum value
+	 * @param maxVal Maximum value
+	 */
+	public HeliosIntegerVariable(int variable, int access, int length, int count, int minVal, int maxVal) {
+		super(variable, access, length, count, TYPE_INTEGER);
+		this.bounded = true;
+		this.minVal = minVal;
+		this.maxVal = maxVal;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public boolean accepts(HeliosValue value) {
+		if (!value.isValid() || !value.isNumeric() || (value.getScale() != 0)) return false;
+		long v = value.getUnscaled();
+		return (v >= this.minVal) && (v <= this.maxVal);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public String getMinString() {
+		return this.bounded ? String.valueOf(this.minVal) : null;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public String getMaxString() {
+		return this.bounded ? String.valueOf(this.maxVal) : null;
+	}
+
+	/**
+	 * Returns whether the variable has a range
+	 * @return <tt>true</tt> if bounded
+	 */
+	public boolean isBounded() {
+		return this.bounded;
+	}
+
+	/**
+	 * Getter for minimum value
+	 * @return minimum value
+	 */
+	public int getMinVal() {
+		return this.minVal;
+	}
+
+	/**
+	 * Getter for maximum value
+	 * @return maximum value
+	 */
+	public int getMaxVal() {
+		return this.maxVal;
+	}
+}
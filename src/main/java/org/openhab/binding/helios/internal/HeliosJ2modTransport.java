@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.net.InetAddress;
+
+import com.ghgande.j2mod.modbus.ModbusSlaveException;
+import com.ghgande.j2mod.modbus.io.ModbusTCPTransaction;
+import com.ghgande.j2mod.modbus.msg.ModbusRequest;
+import com.ghgande.j2mod.modbus.msg.ModbusResponse;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.msg.ReadMultipleRegistersResponse;
+import com.ghgande.j2mod.modbus.msg.WriteMultipleRegistersRequest;
+import com.ghgande.j2mod.modbus.net.TCPMasterConnection;
+import com.ghgande.j2mod.modbus.procimg.Register;
+import com.ghgande.j2mod.modbus.procimg.SimpleRegister;
+
+/**
+ * Transport based on the blocking j2mod library.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosJ2modTransport extends HeliosTransport {
+
+	/**
+	 * The long-lived connection to the Helios device (or <tt>null</tt> if not connected)
+	 */
+	private TCPMasterConnection conn;
+
+	/**
+	 * The transaction used for all requests on the current connection
+	 */
+	private ModbusTCPTransaction trans;
+
+	/**
+	 * Constructor to set the member variables
+	 * @param host IP Address
+	 * @param port Port
+	 */
+	public HeliosJ2modTransport(String host, int port) {
+		super(host, port);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	protected void open() throws Exception {
+		TCPMasterConnection c = new TCPMasterConnection(InetAddress.getByName(this.host));
+		c.setPort(this.port);
+		c.connect();
+		c.setTimeout(this.timeout); // only applicable once the socket exists
+		this.conn = c;
+		this.trans = new ModbusTCPTransaction(c);
+		this.trans.setReconnecting(false); // keep the connection open between transactions
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.conn != null) {
+			this.conn.close();
+			this.conn = null;
+			this.trans = null;
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public synchronized boolean isConnected() {
+		return (this.conn != null) && this.conn.isConnected();
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public void writeRegisters(int unit, int address, byte[] payload) throws HeliosException {
+		Register[] reg = new Register[payload.length / 2];
+		for (int i = 0; i < reg.length; i++) reg[i] = new SimpleRegister(payload[2 * i], payload[2 * i + 1]);
+		WriteMultipleRegistersRequest request = new WriteMultipleRegistersRequest(address, reg);
+		request.setUnitID(unit);
+		this.execute(request);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public void readRegisters(int unit, int address, int count, int type, HeliosValue value) throws HeliosException {
+		ReadMultipleRegistersRequest request = new ReadMultipleRegistersRequest(address, count);
+		request.setUnitID(unit);
+		ReadMultipleRegistersResponse response = (ReadMultipleRegistersResponse) this.execute(request);
+		if (!value.decode(response.getRegisters(), type)) {
+			throw new HeliosException("Invalid response from Helios device");
+		}
+	}
+
+	/**
+	 * Executes the request on the current connection, (re-)connecting first if necessary. The connection
+	 * is dropped if the transaction fails so that the next call reconnects.
+	 * @param request The request
+	 * @return The response
+	 * @throws HeliosException
+	 */
+	private synchronized ModbusResponse execute(ModbusRequest request) throws HeliosException {
+		this.connect();
+		try {
+			this.trans.setRequest(request);
+			this.trans.execute();
+			ModbusResponse response = this.trans.getResponse();
+			if (response == null) throw new Exception("No response"); // j2mod returns null if the device closed the connection
+			return response;
+		} catch (ModbusSlaveException e) {
+			// the device answered with an exception response, the connection itself is fine
+			throw new HeliosException("Helios device rejected the request (" + e.getMessage() + ")");
+		} catch (Exception e) {
+			this.close();
+			throw new HeliosException("Communication with Helios device failed");
+		}
+	}
+}
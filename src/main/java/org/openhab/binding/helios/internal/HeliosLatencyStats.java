@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * This class holds the transaction statistics of a Helios variable: latency histograms of the write phase
+ * (selecting the variable or writing a command), the read phase and the whole transaction as well as the
+ * success and failure counts. Latencies are kept in microseconds.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosLatencyStats implements HeliosLatencyStatsMBean {
+
+	/**
+	 * Latencies of the write phase (us)
+	 */
+	protected final HeliosHistogram write = new HeliosHistogram();
+
+	/**
+	 * Latencies of the read phase (us)
+	 */
+	protected final HeliosHistogram read = new HeliosHistogram();
+
+	/**
+	 * Latencies of the whole transaction (us)
+	 */
+	protected final HeliosHistogram total = new HeliosHistogram();
+
+	/**
+	 * Number of successful transactions
+	 */
+	private volatile long successCount = 0;
+
+	/**
+	 * Number of failed transactions
+	 */
+	private volatile long failureCount = 0;
+
+	/**
+	 * Records a successful transaction
+	 * @param writeNanos Duration of the write phase (ns, negative if not applicable)
+	 * @param readNanos Duration of the read phase (ns, negative if not applicable)
+	 * @param totalNanos Duration of the whole transaction (ns)
+	 */
+	public void recordSuccess(long writeNanos, long readNanos, long totalNanos) {
+		if (writeNanos >= 0) this.write.record(writeNanos / 1000);
+		if (readNanos >= 0) this.read.record(readNanos / 1000);
+		this.total.record(totalNanos / 1000);
+		this.successCount++;
+	}
+
+	/**
+	 * Records a failed transaction
+	 */
+	public void recordFailure() {
+		this.failureCount++;
+	}
+
+	/**
+	 * Returns a statistic by name
+	 * @param name The name, e.g. 'total_p99_ms' or 'failure_count'
+	 * @return The value (or <tt>null</tt> if the name is unknown)
+	 */
+	public Double getStatistic(String name) {
+		if (name.equals("success_count")) return Double.valueOf(this.successCount);
+		if (name.equals("failure_count")) return Double.valueOf(this.failureCount);
+		HeliosHistogram h = null;
+		if (name.startsWith("write_")) h = this.write;
+		else if (name.startsWith("read_")) h = this.read;
+		else if (name.startsWith("total_")) h = this.total;
+		return h == null ? null : getStatistic(h, name.substring(name.indexOf('_') + 1));
+	}
+
+	/**
+	 * Returns a statistic of a histogram
+	 * @param h The histogram
+	 * @param name The name without the histogram prefix, e.g. 'p99_ms'
+	 * @return The value (or <tt>null</tt> if the name is unknown)
+	 */
+	protected static Double getStatistic(HeliosHistogram h, String name) {
+		if (name.equals("p50_ms")) return Double.valueOf(toMs(h.getPercentile(50)));
+		if (name.equals("p99_ms")) return Double.valueOf(toMs(h.getPercentile(99)));
+		if (name.equals("max_ms")) return Double.valueOf(toMs(h.getMax()));
+		if (name.equals("count")) return Double.valueOf(h.getCount());
+		return null;
+	}
+
+	/**
+	 * Converts microseconds to milliseconds
+	 */
+	protected static double toMs(long micros) {
+		return micros / 1000.0;
+	}
+
+	public long getSuccessCount() {
+		return this.successCount;
+	}
+
+	public long getFailureCount() {
+		return this.failureCount;
+	}
+
+	public double getWriteP50Ms() {
+		return toMs(this.write.getPercentile(50));
+	}
+
+	public double getWriteP99Ms() {
+		return toMs(this.write.getPercentile(99));
+	}
+
+	public double getWriteMaxMs() {
+		return toMs(this.write.getMax());
+	}
+
+	public double getReadP50Ms() {
+		return toMs(this.read.getPercentile(50));
+	}
+
+	public double getReadP99Ms() {
+		return toMs(this.read.getPercentile(99));
+	}
+
+	public double getReadMaxMs() {
+		return toMs(this.read.getMax());
+	}
+
+	public double getTotalP50Ms() {
+		return toMs(this.total.getPercentile(50));
+	}
+
+	public double getTotalP99Ms() {
+		return toMs(this.total.getPercentile(99));
+	}
+
+	public double getTotalMaxMs() {
+		return toMs(this.total.getMax());
+	}
+
+	public void reset() {
+		this.write.reset();
+		this.read.reset();
+		this.total.reset();
+		this.successCount = 0;
+		this.failureCount = 0;
+	}
+}
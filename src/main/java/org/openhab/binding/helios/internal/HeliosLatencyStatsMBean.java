@@ -0,0 +1,42 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * JMX interface of the transaction statistics of a Helios variable.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public interface HeliosLatencyStatsMBean {
+
+	long getSuccessCount();
+
+	long getFailureCount();
+
+	double getWriteP50Ms();
+
+	double getWriteP99Ms();
+
+	double getWriteMaxMs();
+
+	double getReadP50Ms();
+
+	double getReadP99Ms();
+
+	double getReadMaxMs();
+
+	double getTotalP50Ms();
+
+	double getTotalP99Ms();
+
+	double getTotalMaxMs();
+
+	void reset();
+}
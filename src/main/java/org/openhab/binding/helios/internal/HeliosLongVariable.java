@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * This class represents an integer variable of the Helios modbus whose range exceeds the range of an
+ * <code>int</code> (e.g. counters up to 2^32 - 1).
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosLongVariable extends HeliosVariable {
+
+	/**
+	 * The minimum value
+	 */
+	private final long minVal;
+
+	/**
+	 * The maximum value
+	 */
+	private final long maxVal;
+
+	/**
+	 * Constructor to set the member variables
+	 * @param variable The variable's number
+	 * @param access Access possibilities
+	 * @param length Length
+	 * @param count Count
+	 * @param minVal Minimum value
+	 * @param maxVal Maximum value
+	 */
+	public HeliosLongVariable(int variable, int access, int length, int count, long minVal, long maxVal) {
+		super(variable, access, length, count, TYPE_INTEGER);
+		this.minVal = minVal;
+		this.maxVal = maxVal;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public boolean accepts(HeliosValue value) {
+		if (!value.isValid() || !value.isNumeric() || (value.getScale() != 0)) return false;
+		long v = value.getUnscaled();
+		return (v >= this.minVal) && (v <= this.maxVal);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public String getMinString() {
+		return String.valueOf(this.minVal);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public String getMaxString() {
+		return String.valueOf(this.maxVal);
+	}
+
+	/**
+	 * Getter for minimum value
+	 * @return minimum value
+	 */
+	public long getMinVal() {
+		return this.minVal;
+	}
+
+	/**
+	 * Getter for maximum value
+	 * @return maximum value
+	 */
+	public long getMaxVal() {
+		return this.maxVal;
+	}
+}
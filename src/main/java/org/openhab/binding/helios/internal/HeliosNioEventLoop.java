@@ -0,0 +1,237 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class runs a single selector thread which performs the socket I/O of all NIO transports. Channels
+ * are registered and their interest sets are changed on the selector thread only: other threads hand over
+ * tasks which are run on the next wakeup.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosNioEventLoop implements Runnable {
+
+	private static final Logger logger = LoggerFactory.getLogger(HeliosNioEventLoop.class);
+
+	/**
+	 * Callback interface of the channels registered with the event loop
+	 */
+	public interface Handler {
+
+		/**
+		 * Called on the selector thread when the channel is readable
+		 * @throws IOException
+		 */
+		void readable() throws IOException;
+
+		/**
+		 * Called on the selector thread when the channel is writable
+		 * @throws IOException
+		 */
+		void writable() throws IOException;
+
+		/**
+		 * Called on the selector thread if reading or writing failed
+		 * @param e The exception
+		 */
+		void failed(IOException e);
+	}
+
+	/**
+	 * The name of the selector thread
+	 */
+	private final String name;
+
+	/**
+	 * The selector
+	 */
+	private final Selector selector;
+
+	/**
+	 * Tasks to be run on the selector thread
+	 */
+	private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+	/**
+	 * The selector thread (or <tt>null</tt> if not started)
+	 */
+	private Thread thread;
+
+	/**
+	 * Flag indicating the selector thread should keep running
+	 */
+	private volatile boolean running = false;
+
+	/**
+	 * Constructor to open the selector
+	 * @param name The name of the selector thread
+	 * @throws IOException if the selector could not be opened
+	 */
+	public HeliosNioEventLoop(String name) throws IOException {
+		this.name = name;
+		this.selector = Selector.open();
+	}
+
+	/**
+	 * Starts the selector thread
+	 */
+	public synchronized void start() {
+		if (this.thread != null) return;
+		this.running = true;
+		this.thread = new Thread(this, this.name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Stops the selector thread and closes the selector (and thereby all registered channels' keys)
+	 */
+	public synchronized void shutdown() {
+		this.running = false;
+		this.selector.wakeup();
+		if (this.thread != null) {
+			try {
+				this.thread.join(5000);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.thread = null;
+		}
+		try {
+			this.selector.close();
+		} catch (IOException e) {
+			logger.debug("Closing the selector failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns whether the selector thread is running
+	 * @return <tt>true</tt> if running
+	 */
+	public boolean isRunning() {
+		return this.running;
+	}
+
+	/**
+	 * Runs a task on the selector thread
+	 * @param task The task
+	 */
+	public void execute(Runnable task) {
+		this.tasks.add(task);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Registers a (non-blocking) channel with the selector. The call blocks until the registration has been
+	 * performed on the selector thread.
+	 * @param channel The channel
+	 * @param ops The initial interest set
+	 * @param handler The handler to be called for ready operations
+	 * @param timeout Maximum time to wait (ms)
+	 * @return The selection key
+	 * @throws IOException if the channel could not be registered
+	 */
+	public SelectionKey register(final SelectableChannel channel, final int ops, final Handler handler, long timeout)
+			throws IOException {
+		if (!this.running) throw new IOException("Event loop " + this.name + " is not running");
+		final Object[] result = new Object[1];
+		this.execute(new Runnable() {
+			@Override
+			public void run() {
+				Object r;
+				try {
+					r = channel.register(HeliosNioEventLoop.this.selector, ops, handler);
+				} catch (IOException e) {
+					r = e;
+				}
+				synchronized (result) {
+					result[0] = r;
+					result.notifyAll();
+				}
+			}
+		});
+
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (result) {
+			while (result[0] == null) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) throw new IOException("Registration with event loop " + this.name + " timed out");
+				try {
+					result.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Registration with event loop " + this.name + " interrupted");
+				}
+			}
+		}
+		if (result[0] instanceof IOException) throw (IOException) result[0];
+		return (SelectionKey) result[0];
+	}
+
+	/**
+	 * Changes the interest set of a key on the selector thread
+	 * @param key The key
+	 * @param ops The new interest set
+	 */
+	public void setInterestOps(final SelectionKey key, final int ops) {
+		this.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (key.isValid()) key.interestOps(ops);
+			}
+		});
+	}
+
+	/**
+	 * The selector thread's main loop
+	 */
+	@Override
+	public void run() {
+		while (this.running) {
+			try {
+				this.selector.select();
+
+				Runnable task;
+				while ((task = this.tasks.poll()) != null) {
+					task.run();
+				}
+
+				Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					Handler handler = (Handler) key.attachment();
+					try {
+						if (key.isValid() && key.isWritable()) handler.writable();
+						if (key.isValid() && key.isReadable()) handler.readable();
+					} catch (IOException e) {
+						key.cancel();
+						handler.failed(e);
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				break;
+			} catch (Exception e) {
+				logger.error("Error in event loop " + this.name + ": " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,595 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transport based on a non-blocking socket channel. The socket I/O is performed by a shared
+ * {@link HeliosNioEventLoop}, the calling thread only encodes the requests into a reusable direct buffer and
+ * waits for the matching responses (identified by the MBAP transaction ID), which are decoded straight from
+ * the receive buffer.
+ * <p>
+ * Optionally several variables are read with pipelined transactions: the select and read requests of a
+ * batch of variables are sent at once and the responses are matched by transaction ID. As the device's
+ * variable selection is global, this relies on the device processing the requests of a connection in order.
+ * Before pipelining is used, a probe checks that the device answers pipelined requests and that every read
+ * returns the variable selected before; otherwise the transport falls back to strict request/response.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosNioTransport extends HeliosTransport implements HeliosNioEventLoop.Handler {
+
+	private static final Logger logger = LoggerFactory.getLogger(HeliosNioTransport.class);
+
+	/**
+	 * Maximum number of variables read in one pipelined batch
+	 */
+	public static final int MAX_PIPELINE_DEPTH = 16;
+
+	/**
+	 * Maximum size of a Modbus TCP frame
+	 */
+	private static final int MAX_FRAME = 260;
+
+	/**
+	 * Size of the MBAP header (including the unit ID)
+	 */
+	private static final int MBAP_LENGTH = 7;
+
+	/**
+	 * Function code 'read holding registers'
+	 */
+	private static final int FC_READ_HOLDING_REGISTERS = 0x03;
+
+	/**
+	 * Function code 'write multiple registers'
+	 */
+	private static final int FC_WRITE_MULTIPLE_REGISTERS = 0x10;
+
+	/**
+	 * Pipelining has not been probed yet
+	 */
+	private static final int PROBE_PENDING = 0;
+
+	/**
+	 * The device tolerates pipelined transactions
+	 */
+	private static final int PROBE_OK = 1;
+
+	/**
+	 * The device does not tolerate pipelined transactions
+	 */
+	private static final int PROBE_FAILED = 2;
+
+	/**
+	 * The event loop performing the socket I/O
+	 */
+	private final HeliosNioEventLoop loop;
+
+	/**
+	 * The transmit buffer (reused for all requests)
+	 */
+	private final ByteBuffer tx = ByteBuffer.allocateDirect(2 * MAX_PIPELINE_DEPTH * MAX_FRAME);
+
+	/**
+	 * The receive buffer (reused for all responses)
+	 */
+	private final ByteBuffer rx = ByteBuffer.allocateDirect((2 * MAX_PIPELINE_DEPTH + 1) * MAX_FRAME);
+
+	/**
+	 * Lock guarding the channel, the buffers and the state of the outstanding transactions - shared with
+	 * the event loop's thread
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * The channel (or <tt>null</tt> if not connected)
+	 */
+	private SocketChannel channel;
+
+	/**
+	 * The channel's selection key
+	 */
+	private SelectionKey key;
+
+	/**
+	 * The last MBAP transaction ID used
+	 */
+	private int transactionId = 0;
+
+	/**
+	 * The transaction ID of the first request of the outstanding batch
+	 */
+	private int firstId = 0;
+
+	/**
+	 * The number of requests encoded into the transmit buffer
+	 */
+	private int requestCount = 0;
+
+	/**
+	 * The number of outstanding requests (0 if idle)
+	 */
+	private int expectedCount = 0;
+
+	/**
+	 * The number of responses received for the outstanding requests
+	 */
+	private int receivedCount = 0;
+
+	/**
+	 * The offset of each response frame in the receive buffer, indexed by transaction ID - first ID (-1 if
+	 * not received yet)
+	 */
+	private final int[] offsets = new int[2 * MAX_PIPELINE_DEPTH];
+
+	/**
+	 * The number of bytes at the start of the receive buffer holding received response frames
+	 */
+	private int scanned = 0;
+
+	/**
+	 * The I/O error which occured on the event loop's thread (or <tt>null</tt>)
+	 */
+	private IOException failure;
+
+	/**
+	 * The number of variables read in one pipelined batch (1 to disable pipelining)
+	 */
+	private int pipelineDepth = 1;
+
+	/**
+	 * The result of the pipelining probe
+	 */
+	private volatile int probeState = PROBE_PENDING;
+
+	/**
+	 * Constructor to set the member variables
+	 * @param host IP Address
+	 * @param port Port
+	 * @param loop The event loop performing the socket I/O
+	 */
+	public HeliosNioTransport(String host, int port, HeliosNioEventLoop loop) {
+		super(host, port);
+		this.loop = loop;
+	}
+
+	/**
+	 * Sets the number of variables read in one pipelined batch - pipelining is only used after a successful
+	 * probe
+	 * @param pipelineDepth The pipeline depth (1 to disable pipelining)
+	 */
+	public void setPipelineDepth(int pipelineDepth) {
+		this.pipelineDepth = Math.max(1, Math.min(pipelineDepth, MAX_PIPELINE_DEPTH));
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public int getPipelineDepth() {
+		return this.probeState == PROBE_OK ? this.pipelineDepth : 1;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	protected void open() throws Exception {
+		SocketChannel ch = SocketChannel.open();
+		try {
+			ch.socket().connect(new InetSocketAddress(this.host, this.port), this.timeout);
+			ch.socket().setTcpNoDelay(true);
+			ch.configureBlocking(false);
+			synchronized (this.lock) {
+				this.rx.clear();
+				this.expectedCount = 0;
+				this.scanned = 0;
+				this.failure = null;
+				this.channel = ch;
+			}
+			SelectionKey k = this.loop.register(ch, SelectionKey.OP_READ, this, this.timeout);
+			synchronized (this.lock) {
+				this.key = k;
+			}
+		} catch (IOException e) {
+			this.close();
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public void close() {
+		synchronized (this.lock) {
+			if (this.key != null) {
+				this.key.cancel();
+				this.key = null;
+			}
+			if (this.channel != null) {
+				try {
+					this.channel.close();
+				} catch (IOException e) {
+					// ignore, the channel is gone anyway
+				}
+				this.channel = null;
+			}
+			this.lock.notifyAll();
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public boolean isConnected() {
+		synchronized (this.lock) {
+			return (this.channel != null) && this.channel.isOpen() && (this.failure == null);
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public synchronized void writeRegisters(int unit, int address, byte[] payload) throws HeliosException {
+		this.connect();
+		this.startBatch();
+		this.encodeWrite(unit, address, payload);
+		this.transact();
+		synchronized (this.lock) {
+			try {
+				HeliosException e = this.responseError(0);
+				if (e != null) throw e;
+			} finally {
+				this.release();
+			}
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public synchronized void readRegisters(int unit, int address, int count, int type, HeliosValue value)
+			throws HeliosException {
+		this.connect();
+		this.startBatch();
+		this.encodeRead(unit, address, count);
+		this.transact();
+		synchronized (this.lock) {
+			try {
+				HeliosException e = this.responseError(0);
+				if (e == null) e = this.decode(0, type, value);
+				if (e != null) throw e;
+			} finally {
+				this.release();
+			}
+		}
+	}
+
+	/**
+	 * Reads the variables with pipelined transactions if the device tolerates them, strictly one after the
+	 * other otherwise
+	 * @{inheritDoc}
+	 */
+	@Override
+	public synchronized void readVariables(int unit, int address, HeliosVariable[] variables, HeliosValue[] values,
+			HeliosException[] errors) {
+		if (this.probeState == PROBE_PENDING) this.probePipelining(unit, address, variables);
+		if (this.getPipelineDepth() < 2) {
+			super.readVariables(unit, address, variables, values, errors);
+			return;
+		}
+		for (int off = 0; off < variables.length; off += this.pipelineDepth) {
+			int len = Math.min(this.pipelineDepth, variables.length - off);
+			try {
+				if (!this.readPipelined(unit, address, variables, values, errors, off, len)) {
+					// the device mixed up the selections - fall back to strict request/response for good
+					this.probeState = PROBE_FAILED;
+					this.close();
+					HeliosVariable[] v = new HeliosVariable[variables.length - off];
+					HeliosValue[] val = new HeliosValue[v.length];
+					HeliosException[] err = new HeliosException[v.length];
+					System.arraycopy(variables, off, v, 0, v.length);
+					System.arraycopy(values, off, val, 0, v.length);
+					super.readVariables(unit, address, v, val, err);
+					System.arraycopy(err, 0, errors, off, v.length);
+					return;
+				}
+			} catch (HeliosException e) {
+				for (int i = off; i < off + len; i++) errors[i] = e;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the device answers pipelined requests in order by reading the variables in one pipelined
+	 * batch. The check is only done once, it is repeated later if the device could not be reached.
+	 * @{inheritDoc}
+	 */
+	@Override
+	public synchronized void probePipelining(int unit, int address, HeliosVariable[] variables) {
+		if ((this.pipelineDepth < 2) || (this.probeState != PROBE_PENDING) || (variables.length < 2)) return;
+		try {
+			this.connect();
+		} catch (HeliosException e) {
+			return; // device not reachable, try again later
+		}
+		int n = Math.min(variables.length, this.pipelineDepth);
+		HeliosValue[] values = new HeliosValue[n];
+		for (int i = 0; i < n; i++) values[i] = new HeliosValue();
+		HeliosException[] errors = new HeliosException[n];
+		boolean inSync;
+		try {
+			inSync = this.readPipelined(unit, address, variables, values, errors, 0, n);
+		} catch (HeliosException e) {
+			inSync = false; // requests were dropped
+		}
+		if (inSync) {
+			this.probeState = PROBE_OK;
+			logger.info("Helios device {} accepts pipelined transactions - reading up to {} variables at once",
+					this.getAddress(), this.pipelineDepth);
+		} else {
+			this.probeState = PROBE_FAILED;
+			this.close(); // discard any late responses
+			logger.info("Helios device {} does not accept pipelined transactions - using strict request/response",
+					this.getAddress());
+		}
+	}
+
+	/**
+	 * Reads a batch of variables with pipelined transactions
+	 * @param unit The unit ID
+	 * @param address The start address
+	 * @param variables The variables
+	 * @param values The values to decode the responses into
+	 * @param errors Receives the error of each variable (<tt>null</tt> if read successfully)
+	 * @param off The index of the first variable of the batch
+	 * @param len The number of variables in the batch
+	 * @return <tt>false</tt> if a read returned another variable than the one selected before
+	 * @throws HeliosException if the transactions failed as a whole (e.g. timeout)
+	 */
+	private boolean readPipelined(int unit, int address, HeliosVariable[] variables, HeliosValue[] values,
+			HeliosException[] errors, int off, int len) throws HeliosException {
+		this.connect();
+		this.startBatch();
+		for (int i = off; i < off + len; i++) {
+			this.encodeWrite(unit, address, variables[i].getRequestBytes());
+			this.encodeRead(unit, address, variables[i].getCount());
+		}
+		this.transact();
+		boolean inSync = true;
+		synchronized (this.lock) {
+			try {
+				for (int i = 0; i < len; i++) {
+					HeliosVariable v = variables[off + i];
+					HeliosException e = this.responseError(2 * i);
+					if (e == null) e = this.responseError(2 * i + 1);
+					if (e == null) e = this.decode(2 * i + 1, v.getType(), values[off + i]);
+					if ((e == null) && (values[off + i].getVariable() != v.getVariable())) {
+						inSync = false;
+						e = new HeliosException("Helios device returned variable " + values[off + i].getVariable()
+								+ " instead of " + v.getVariable());
+					}
+					errors[off + i] = e;
+				}
+			} finally {
+				this.release();
+			}
+		}
+		return inSync;
+	}
+
+	/**
+	 * Clears the transmit buffer for a new batch of requests
+	 */
+	private void startBatch() {
+		this.tx.clear();
+		this.requestCount = 0;
+		this.firstId = (this.transactionId + 1) & 0xFFFF;
+	}
+
+	/**
+	 * Encodes a 'write multiple registers' request
+	 */
+	private void encodeWrite(int unit, int address, byte[] payload) {
+		this.encodeHeader(unit, FC_WRITE_MULTIPLE_REGISTERS, 6 + payload.length);
+		this.tx.putShort((short) address);
+		this.tx.putShort((short) (payload.length / 2));
+		this.tx.put((byte) payload.length);
+		this.tx.put(payload);
+	}
+
+	/**
+	 * Encodes a 'read holding registers' request
+	 */
+	private void encodeRead(int unit, int address, int count) {
+		this.encodeHeader(unit, FC_READ_HOLDING_REGISTERS, 5);
+		this.tx.putShort((short) address);
+		this.tx.putShort((short) count);
+	}
+
+	/**
+	 * Encodes the MBAP header and the function code of the next request
+	 * @param unit The unit ID
+	 * @param function The function code
+	 * @param pduLength The length of the PDU (function code and data)
+	 */
+	private void encodeHeader(int unit, int function, int pduLength) {
+		this.transactionId = (this.transactionId + 1) & 0xFFFF;
+		this.requestCount++;
+		this.tx.putShort((short) this.transactionId);
+		this.tx.putShort((short) 0); // protocol ID
+		this.tx.putShort((short) (pduLength + 1));
+		this.tx.put((byte) unit);
+		this.tx.put((byte) function);
+	}
+
+	/**
+	 * Sends the requests in the transmit buffer and waits for all responses. On return the response frames
+	 * are in the receive buffer and have to be released by {@link #release()}. The connection is dropped if
+	 * the transactions fail so that the next call reconnects.
+	 * @throws HeliosException
+	 */
+	private void transact() throws HeliosException {
+		synchronized (this.lock) {
+			try {
+				if (this.channel == null) throw new IOException("Not connected");
+				this.expectedCount = this.requestCount;
+				this.receivedCount = 0;
+				for (int i = 0; i < this.expectedCount; i++) this.offsets[i] = -1;
+				this.tx.flip();
+				this.channel.write(this.tx);
+				if (this.tx.hasRemaining()) {
+					// socket buffer full - the event loop writes the rest
+					this.loop.setInterestOps(this.key, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+
+				long deadline = System.currentTimeMillis() + this.timeout;
+				while ((this.receivedCount < this.expectedCount) && (this.failure == null) && (this.channel != null)) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0) throw new IOException("Timeout");
+					this.lock.wait(remaining);
+				}
+				if (this.receivedCount < this.expectedCount) {
+					throw this.failure != null ? this.failure : new IOException("Connection closed");
+				}
+			} catch (IOException e) {
+				this.expectedCount = 0;
+				this.close();
+				throw new HeliosException("Communication with Helios device failed");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.expectedCount = 0;
+				this.close();
+				throw new HeliosException("Communication with Helios device interrupted");
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a response is an exception response - the connection itself is fine in that case
+	 * @param slot The index of the request in the batch
+	 * @return The error (or <tt>null</tt> for a regular response)
+	 */
+	private HeliosException responseError(int slot) {
+		int offset = this.offsets[slot];
+		if ((this.rx.get(offset + MBAP_LENGTH) & 0x80) == 0) return null;
+		int code = this.rx.get(offset + MBAP_LENGTH + 1) & 0xFF;
+		return new HeliosException("Helios device rejected the request (exception code " + code + ")");
+	}
+
+	/**
+	 * Decodes the response to a 'read holding registers' request
+	 * @param slot The index of the request in the batch
+	 * @param type The Helios data type of the variable
+	 * @param value The value to decode the response into
+	 * @return The error (or <tt>null</tt> if decoded successfully)
+	 */
+	private HeliosException decode(int slot, int type, HeliosValue value) {
+		int offset = this.offsets[slot];
+		int length = 6 + (this.rx.getShort(offset + 4) & 0xFFFF);
+		int byteCount = this.rx.get(offset + MBAP_LENGTH + 1) & 0xFF;
+		if ((this.rx.get(offset + MBAP_LENGTH) != FC_READ_HOLDING_REGISTERS) || (MBAP_LENGTH + 2 + byteCount > length)
+				|| !value.decode(this.rx, offset + MBAP_LENGTH + 2, byteCount, type)) {
+			return new HeliosException("Invalid response from Helios device");
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the response frames of the completed batch from the receive buffer
+	 */
+	private void release() {
+		synchronized (this.lock) {
+			if (this.scanned > 0) {
+				this.rx.flip();
+				this.rx.position(this.scanned);
+				this.rx.compact();
+			}
+			this.scanned = 0;
+			this.expectedCount = 0;
+		}
+	}
+
+	/**
+	 * Removes a frame from the receive buffer
+	 * @param offset The offset of the frame
+	 * @param length The length of the frame
+	 */
+	private void discard(int offset, int length) {
+		int end = this.rx.position();
+		for (int i = offset + length; i < end; i++) {
+			this.rx.put(i - length, this.rx.get(i));
+		}
+		this.rx.position(end - length);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public void readable() throws IOException {
+		synchronized (this.lock) {
+			if (this.channel == null) return;
+			if (this.channel.read(this.rx) < 0) throw new IOException("Connection closed by Helios device");
+
+			// match the frames to the outstanding requests, frames of abandoned transactions are skipped
+			while ((this.receivedCount < this.expectedCount) && (this.rx.position() - this.scanned >= 6)) {
+				int length = 6 + (this.rx.getShort(this.scanned + 4) & 0xFFFF);
+				if ((length < MBAP_LENGTH + 2) || (length > MAX_FRAME)) throw new IOException("Invalid frame");
+				if (this.rx.position() - this.scanned < length) break;
+				int slot = ((this.rx.getShort(this.scanned) & 0xFFFF) - this.firstId) & 0xFFFF;
+				if ((slot < this.expectedCount) && (this.offsets[slot] < 0)) {
+					this.offsets[slot] = this.scanned;
+					this.scanned += length;
+					if (++this.receivedCount == this.expectedCount) this.lock.notifyAll();
+				} else {
+					this.discard(this.scanned, length);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public void writable() throws IOException {
+		synchronized (this.lock) {
+			if (this.channel == null) return;
+			this.channel.write(this.tx);
+			if (!this.tx.hasRemaining()) this.key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public void failed(IOException e) {
+		synchronized (this.lock) {
+			this.failure = e;
+			this.close();
+		}
+	}
+}
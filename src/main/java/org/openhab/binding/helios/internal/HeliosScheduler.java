@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * This class decides which variables are due for polling. Variables sharing the same refresh interval are
+ * grouped into a tier, each tick only the tiers which are due are returned. Variables with the interval
+ * {@link #ONCE} are read until they have been read successfully once.
+ * <p>
+ * The intervals are rounded to whole seconds ({@link #GRID}, sub-second intervals to {@link #MIN_TICK}) before
+ * the tick is derived from them, so odd intervals like 7001 ms don't result in a tick of a few milliseconds.
+ * <p>
+ * Variables with a ceiling above their refresh interval are polled adaptively: after {@link #STABLE_READS}
+ * consecutive reads without a change their interval is doubled (up to the ceiling), as soon as a change is
+ * detected it snaps back to the refresh interval (the floor).
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosScheduler {
+
+	/**
+	 * Refresh interval for variables which are read only once
+	 */
+	public static final long ONCE = 0;
+
+	/**
+	 * The smallest tick (ms)
+	 */
+	public static final long MIN_TICK = 100;
+
+	/**
+	 * The grid intervals of a second and more are rounded to (ms)
+	 */
+	public static final long GRID = 1000;
+
+	/**
+	 * The number of consecutive unchanged reads after which the interval of an adaptive variable is doubled
+	 */
+	public static final int STABLE_READS = 3;
+
+	/**
+	 * A group of variables sharing the same refresh interval
+	 */
+	private static class Tier {
+
+		/**
+		 * The refresh interval (ms)
+		 */
+		private final long interval;
+
+		/**
+		 * The point in time when the tier is due next (ms)
+		 */
+		private long nextDue = 0;
+
+		/**
+		 * The variables of this tier
+		 */
+		private final List<String> variables = new ArrayList<String>();
+
+		private Tier(long interval) {
+			this.interval = interval;
+		}
+	}
+
+	/**
+	 * A variable whose interval adapts to how often its value changes
+	 */
+	private static class Adaptive {
+
+		/**
+		 * The smallest interval (ms)
+		 */
+		private final long floor;
+
+		/**
+		 * The largest interval (ms)
+		 */
+		private final long ceiling;
+
+		/**
+		 * The current interval (ms)
+		 */
+		private long interval;
+
+		/**
+		 * The number of consecutive reads without a change
+		 */
+		private int unchanged = 0;
+
+		/**
+		 * The point in time when the variable was due last (ms)
+		 */
+		private long lastDue = 0;
+
+		/**
+		 * The point in time when the variable is due next (ms)
+		 */
+		private long nextDue = 0;
+
+		private Adaptive(long floor, long ceiling) {
+			this.floor = floor;
+			this.ceiling = ceiling;
+			this.interval = floor;
+		}
+	}
+
+	/**
+	 * The tiers of regularly polled variables, ordered by interval
+	 */
+	private final Map<Long, Tier> tiers = new TreeMap<Long, Tier>();
+
+	/**
+	 * The variables which still need to be read once
+	 */
+	private final Set<String> once = new HashSet<String>();
+
+	/**
+	 * The adaptively polled variables, indexed by variable name
+	 */
+	private final Map<String, Adaptive> adaptive = new HashMap<String, Adaptive>();
+
+	/**
+	 * The interval used to retry variables which are read once
+	 */
+	private final long onceRetryInterval;
+
+	/**
+	 * The point in time when the variables which are read once are due next (ms)
+	 */
+	private long onceNextDue = 0;
+
+	/**
+	 * The scheduler tick (ms)
+	 */
+	private final long tick;
+
+	/**
+	 * Constructor to group the variables into tiers
+	 * @param intervals The refresh interval for each variable (ms or {@link #ONCE})
+	 * @param onceRetryInterval The interval for retrying variables which could not be read once yet (ms)
+	 */
+	public HeliosScheduler(Map<String, Long> intervals, long onceRetryInterval) {
+		this(intervals, new HashMap<String, Long>(), onceRetryInterval);
+	}
+
+	/**
+	 * Constructor to group the variables into tiers and set up the adaptively polled variables
+	 * @param intervals The refresh interval for each variable (ms or {@link #ONCE}), the floor of adaptive variables
+	 * @param ceilings The ceiling of each adaptively polled variable (ms) - variables without a ceiling above
+	 * their refresh interval are polled with a fixed interval
+	 * @param onceRetryInterval The interval for retrying variables which could not be read once yet (ms)
+	 */
+	public HeliosScheduler(Map<String, Long> intervals, Map<String, Long> ceilings, long onceRetryInterval) {
+		this.onceRetryInterval = snap(onceRetryInterval);
+		long t = this.onceRetryInterval;
+		for (Map.Entry<String, Long> e : intervals.entrySet()) {
+			long interval = snap(e.getValue().longValue());
+			Long ceiling = ceilings.get(e.getKey());
+			if (interval == ONCE) {
+				this.once.add(e.getKey());
+			} else if ((ceiling != null) && (ceiling.longValue() > interval)) {
+				this.adaptive.put(e.getKey(), new Adaptive(interval, snap(ceiling.longValue())));
+				t = gcd(t, interval);
+			} else {
+				Tier tier = this.tiers.get(interval);
+				if (tier == null) {
+					tier = new Tier(interval);
+					this.tiers.put(interval, tier);
+				}
+				tier.variables.add(e.getKey());
+				t = gcd(t, interval);
+			}
+		}
+		this.tick = Math.max(t, MIN_TICK);
+	}
+
+	/**
+	 * Returns the interval in which {@link #getDueVariables(long)} should be called
+	 * @return The tick (ms)
+	 */
+	public long getTick() {
+		return this.tick;
+	}
+
+	/**
+	 * Returns the variables which are due and schedules their next poll
+	 * @param now The current time (ms)
+	 * @return The due variables
+	 */
+	public synchronized Set<String> getDueVariables(long now) {
+		Set<String> due = new HashSet<String>();
+		for (Tier tier : this.tiers.values()) {
+			if (now >= tier.nextDue) {
+				due.addAll(tier.variables);
+				// don't try to catch up on missed ticks
+				tier.nextDue = Math.max(tier.nextDue + tier.interval, now + tier.interval - this.tick / 2);
+			}
+		}
+		for (Map.Entry<String, Adaptive> e : this.adaptive.entrySet()) {
+			Adaptive a = e.getValue();
+			if (now >= a.nextDue) {
+				due.add(e.getKey());
+				a.lastDue = now;
+				a.nextDue = Math.max(a.nextDue + a.interval, now + a.interval - this.tick / 2);
+			}
+		}
+		if (!this.once.isEmpty() && (now >= this.onceNextDue)) {
+			due.addAll(this.once);
+			this.onceNextDue = now + this.onceRetryInterval;
+		}
+		return due;
+	}
+
+	/**
+	 * Notifies the scheduler that a variable has been read successfully
+	 * @param variableName The variable name
+	 * @param changed <tt>true</tt> if the value changed since the last read
+	 */
+	public synchronized void markRead(String variableName, boolean changed) {
+		this.once.remove(variableName);
+		Adaptive a = this.adaptive.get(variableName);
+		if (a == null) return;
+		if (changed) {
+			a.unchanged = 0;
+			if (a.interval != a.floor) {
+				a.interval = a.floor;
+				a.nextDue = a.lastDue + a.floor;
+			}
+		} else if (++a.unchanged >= STABLE_READS) {
+			a.unchanged = 0;
+			a.interval = Math.min(a.interval * 2, a.ceiling);
+		}
+	}
+
+	/**
+	 * Returns the current refresh interval of a variable
+	 * @param variableName The variable name
+	 * @return The interval (ms, {@link #ONCE} for variables read once, -1 if the variable is not scheduled)
+	 */
+	public synchronized long getInterval(String variableName) {
+		Adaptive a = this.adaptive.get(variableName);
+		if (a != null) return a.interval;
+		for (Tier tier : this.tiers.values()) {
+			if (tier.variables.contains(variableName)) return tier.interval;
+		}
+		return this.once.contains(variableName) ? ONCE : -1;
+	}
+
+	/**
+	 * Rounds an interval to the grid
+	 * @param interval The interval (ms or {@link #ONCE})
+	 * @return The rounded interval (ms or {@link #ONCE})
+	 */
+	static long snap(long interval) {
+		if (interval == ONCE) return ONCE;
+		long grid = interval < GRID ? MIN_TICK : GRID;
+		// rounding up would overflow
+		if (interval > Long.MAX_VALUE - grid) return interval / grid * grid;
+		return Math.max((interval + grid / 2) / grid * grid, MIN_TICK);
+	}
+
+	/**
+	 * Greatest common divisor
+	 */
+	static long gcd(long a, long b) {
+		while (b != 0) {
+			long r = a % b;
+			a = b;
+			b = r;
+		}
+		return a;
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * This class holds the values of a set of variables read in one batch by
+ * {@link HeliosCommunicator#readAll(Collection, HeliosSnapshot, Listener)}: the value, the point in time it was
+ * read and the error of each variable. A snapshot is meant to be reused for each batch, its buffers only grow
+ * and the values are decoded into the same {@link HeliosValue} instances. It must not be shared between threads.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosSnapshot {
+
+	/**
+	 * A listener which is notified after each batch of transactions while a snapshot is read
+	 */
+	public interface Listener {
+
+		/**
+		 * Called after a batch of transactions (a single variable unless pipelining is used) has been read
+		 * @param snapshot The snapshot
+		 * @param from The index of the first variable of the batch
+		 * @param to The index after the last variable of the batch
+		 * @return <tt>true</tt> to continue reading, <tt>false</tt> to stop (the remaining variables are not read)
+		 */
+		boolean batchRead(HeliosSnapshot snapshot, int from, int to);
+	}
+
+	/**
+	 * The variable names
+	 */
+	private String[] names;
+
+	/**
+	 * The variables (<tt>null</tt> for variables unknown to the catalog)
+	 */
+	private HeliosVariable[] variables;
+
+	/**
+	 * The values (reused)
+	 */
+	private HeliosValue[] values;
+
+	/**
+	 * The error of each variable (<tt>null</tt> if read successfully or not read yet)
+	 */
+	private HeliosException[] errors;
+
+	/**
+	 * The point in time each variable was read (ms, 0 if not read yet)
+	 */
+	private long[] timestamps;
+
+	/**
+	 * The buffers handed to the transport for a batch of pipelined reads, indexed by batch size
+	 */
+	private HeliosVariable[][] batchVariables = new HeliosVariable[0][];
+	private HeliosValue[][] batchValues = new HeliosValue[0][];
+	private HeliosException[][] batchErrors = new HeliosException[0][];
+
+	/**
+	 * The number of variables in the snapshot
+	 */
+	private int size = 0;
+
+	/**
+	 * The number of variables which have been read (the variables are read in order)
+	 */
+	private int readCount = 0;
+
+	/**
+	 * Constructor to create an empty snapshot
+	 */
+	public HeliosSnapshot() {
+		this(16);
+	}
+
+	/**
+	 * Constructor to create an empty snapshot
+	 * @param capacity The initial capacity (number of variables)
+	 */
+	public HeliosSnapshot(int capacity) {
+		this.names = new String[0];
+		this.variables = new HeliosVariable[0];
+		this.values = new HeliosValue[0];
+		this.errors = new HeliosException[0];
+		this.timestamps = new long[0];
+		this.ensureCapacity(capacity);
+	}
+
+	/**
+	 * Resets the snapshot to the given variables - none of them is read yet
+	 * @param variableNames The variable names
+	 * @param vMap The catalog to look the variables up in
+	 */
+	void prepare(Collection<String> variableNames, HeliosVariableMap vMap) {
+		this.ensureCapacity(variableNames.size());
+		int i = 0;
+		for (String name : variableNames) {
+			this.names[i] = name;
+			this.variables[i] = vMap.getVariable(name);
+			this.errors[i] = null;
+			this.timestamps[i] = 0;
+			i++;
+		}
+		if (i < this.size) Arrays.fill(this.names, i, this.size, null);
+		this.size = i;
+		this.readCount = 0;
+	}
+
+	/**
+	 * Grows the buffers if necessary
+	 * @param capacity The required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		int old = this.values.length;
+		if (capacity <= old) return;
+		this.names = Arrays.copyOf(this.names, capacity);
+		this.variables = Arrays.copyOf(this.variables, capacity);
+		this.values = Arrays.copyOf(this.values, capacity);
+		this.errors = Arrays.copyOf(this.errors, capacity);
+		this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+		for (int i = old; i < capacity; i++) {
+			this.values[i] = new HeliosValue();
+		}
+	}
+
+	/**
+	 * Copies a batch of variables into the transport buffers of its size
+	 * @param from The index of the first variable of the batch
+	 * @param to The index after the last variable of the batch
+	 * @return <tt>false</tt> if the batch contains a variable which is unknown to the catalog
+	 */
+	boolean prepareBatch(int from, int to) {
+		int n = to - from;
+		if (n >= this.batchVariables.length) {
+			this.batchVariables = Arrays.copyOf(this.batchVariables, n + 1);
+			this.batchValues = Arrays.copyOf(this.batchValues, n + 1);
+			this.batchErrors = Arrays.copyOf(this.batchErrors, n + 1);
+		}
+		if (this.batchVariables[n] == null) {
+			this.batchVariables[n] = new HeliosVariable[n];
+			this.batchValues[n] = new HeliosValue[n];
+			this.batchErrors[n] = new HeliosException[n];
+		}
+		for (int i = 0; i < n; i++) {
+			if (this.variables[from + i] == null) return false;
+			this.batchVariables[n][i] = this.variables[from + i];
+			this.batchValues[n][i] = this.values[from + i];
+			this.batchErrors[n][i] = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the variables of the batch prepared last
+	 * @param n The batch size
+	 * @return The variables
+	 */
+	HeliosVariable[] getBatchVariables(int n) {
+		return this.batchVariables[n];
+	}
+
+	/**
+	 * Returns the values of the batch prepared last
+	 * @param n The batch size
+	 * @return The values
+	 */
+	HeliosValue[] getBatchValues(int n) {
+		return this.batchValues[n];
+	}
+
+	/**
+	 * Returns the errors of the batch prepared last
+	 * @param n The batch size
+	 * @return The errors
+	 */
+	HeliosException[] getBatchErrors(int n) {
+		return this.batchErrors[n];
+	}
+
+	/**
+	 * Marks a batch of variables as read
+	 * @param from The index of the first variable of the batch
+	 * @param to The index after the last variable of the batch
+	 * @param timestamp The point in time the batch was read (ms)
+	 */
+	void setRead(int from, int to, long timestamp) {
+		for (int i = from; i < to; i++) {
+			this.timestamps[i] = timestamp;
+		}
+		this.readCount = to;
+	}
+
+	/**
+	 * Sets the error of a variable
+	 * @param index The index of the variable
+	 * @param error The error (<tt>null</tt> if read successfully)
+	 */
+	void setError(int index, HeliosException error) {
+		this.errors[index] = error;
+	}
+
+	/**
+	 * Returns the variable (package-private for the communicator)
+	 * @param index The index of the variable
+	 * @return The variable or <tt>null</tt> if it is unknown to the catalog
+	 */
+	HeliosVariable getVariable(int index) {
+		return this.variables[index];
+	}
+
+	/**
+	 * Returns the number of variables in the snapshot
+	 * @return The number of variables
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of variables which have been read (successfully or not) - less than {@link #size()}
+	 * if the read was stopped by the listener
+	 * @return The number of variables read
+	 */
+	public int getReadCount() {
+		return this.readCount;
+	}
+
+	/**
+	 * Returns the name of a variable
+	 * @param index The index of the variable (in the order the names were passed)
+	 * @return The variable name
+	 */
+	public String getName(int index) {
+		return this.names[index];
+	}
+
+	/**
+	 * Returns the value of a variable - the instance is reused by the next read of the snapshot
+	 * @param index The index of the variable
+	 * @return The value (only valid if {@link #isValid(int)})
+	 */
+	public HeliosValue getValue(int index) {
+		return this.values[index];
+	}
+
+	/**
+	 * Returns the error of a variable
+	 * @param index The index of the variable
+	 * @return The error or <tt>null</tt> if the variable was read successfully or has not been read
+	 */
+	public HeliosException getError(int index) {
+		return this.errors[index];
+	}
+
+	/**
+	 * Returns the point in time a variable was read
+	 * @param index The index of the variable
+	 * @return The timestamp (ms, 0 if the variable has not been read)
+	 */
+	public long getTimestamp(int index) {
+		return this.timestamps[index];
+	}
+
+	/**
+	 * Returns whether a variable was read successfully
+	 * @param index The index of the variable
+	 * @return <tt>true</tt> if the value is valid
+	 */
+	public boolean isValid(int index) {
+		return (this.timestamps[index] != 0) && (this.errors[index] == null);
+	}
+
+	/**
+	 * Returns the index of a variable
+	 * @param variableName The variable name
+	 * @return The index or -1 if the variable is not part of the snapshot
+	 */
+	public int indexOf(String variableName) {
+		for (int i = 0; i < this.size; i++) {
+			if (this.names[i].equals(variableName)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of variables which could not be read
+	 * @return The failure count
+	 */
+	public int getFailureCount() {
+		int failures = 0;
+		for (int i = 0; i < this.readCount; i++) {
+			if (this.errors[i] != null) failures++;
+		}
+		return failures;
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * This class represents a string variable of the Helios modbus (e.g. a serial number or a date).
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosStringVariable extends HeliosVariable {
+
+	/**
+	 * Constructor to set the member variables
+	 * @param variable The variable's number
+	 * @param access Access possibilities
+	 * @param length Length
+	 * @param count Count
+	 */
+	public HeliosStringVariable(int variable, int access, int length, int count) {
+		super(variable, access, length, count, TYPE_STRING);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	@Override
+	public boolean accepts(HeliosValue value) {
+		return value.isValid() && !value.isNumeric() && (value.length() <= this.getLength());
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+/**
+ * This class is the base of the Modbus TCP transports used to talk to a Helios device. Only the small subset
+ * of Modbus needed by the Helios protocol is supported: 'write multiple registers' (0x10) and 'read holding
+ * registers' (0x03). The connection is long-lived, it is (re-)established lazily with an exponential backoff
+ * after failed connects.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public abstract class HeliosTransport {
+
+	/**
+	 * Transport based on the j2mod library
+	 */
+	public static final String J2MOD = "j2mod";
+
+	/**
+	 * Transport based on non-blocking NIO channels
+	 */
+	public static final String NIO = "nio";
+
+	/**
+	 * Initial delay before trying to reconnect after a failed connect (ms)
+	 */
+	public static final long MIN_RECONNECT_DELAY = 1000;
+
+	/**
+	 * Maximum delay between two connect attempts (ms)
+	 */
+	public static final long MAX_RECONNECT_DELAY = 60000;
+
+	/**
+	 * Default timeout for connects and transactions (ms)
+	 */
+	public static final int DEFAULT_TIMEOUT = 3000;
+
+	/**
+	 * The host's IP address
+	 */
+	protected final String host;
+
+	/**
+	 * The host's port
+	 */
+	protected final int port;
+
+	/**
+	 * Timeout for connects and transactions (ms)
+	 */
+	protected int timeout = DEFAULT_TIMEOUT;
+
+	/**
+	 * Number of successful connects since this transport was created
+	 */
+	private volatile int connectCount = 0;
+
+	/**
+	 * Current delay before the next reconnect attempt (ms)
+	 */
+	private long reconnectDelay = 0;
+
+	/**
+	 * Earliest point in time for the next reconnect attempt (ms)
+	 */
+	private long nextConnectAttempt = 0;
+
+	/**
+	 * Constructor to set the member variables
+	 * @param host IP Address
+	 * @param port Port
+	 */
+	protected HeliosTransport(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Opens the connection to the Helios device unless it is already open. After a failed attempt further
+	 * attempts are deferred with an exponentially growing delay.
+	 * @throws HeliosException if the connection could not be established
+	 */
+	public synchronized void connect() throws HeliosException {
+		if (this.isConnected()) return;
+
+		long now = System.currentTimeMillis();
+		if (now < this.nextConnectAttempt) {
+			throw new HeliosException("Connection to Helios device " + this.host + ":" + this.port
+					+ " is down, next reconnect attempt in " + (this.nextConnectAttempt - now) + " ms");
+		}
+
+		this.close();
+		try {
+			this.open();
+			this.connectCount++;
+			this.reconnectDelay = 0;
+			this.nextConnectAttempt = 0;
+		} catch (Exception e) {
+			this.close();
+			this.reconnectDelay = this.reconnectDelay == 0 ? MIN_RECONNECT_DELAY : Math.min(this.reconnectDelay * 2, MAX_RECONNECT_DELAY);
+			this.nextConnectAttempt = now + this.reconnectDelay;
+			throw new HeliosException("Connection to Helios device " + this.host + ":" + this.port + " failed");
+		}
+	}
+
+	/**
+	 * Returns the number of successful connects (i.e. TCP handshakes) since this transport was created
+	 * @return The connect count
+	 */
+	public int getConnectCount() {
+		return this.connectCount;
+	}
+
+	/**
+	 * Sets the timeout for connects and transactions
+	 * @param timeout The timeout (ms)
+	 */
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Returns a description of the device address
+	 * @return host:port
+	 */
+	public String getAddress() {
+		return this.host + ":" + this.port;
+	}
+
+	/**
+	 * Opens the connection
+	 * @throws Exception if the connection could not be established
+	 */
+	protected abstract void open() throws Exception;
+
+	/**
+	 * Closes the connection to the Helios device (if open)
+	 */
+	public abstract void close();
+
+	/**
+	 * Returns whether the connection to the Helios device is currently open
+	 * @return <tt>true</tt> if connected
+	 */
+	public abstract boolean isConnected();
+
+	/**
+	 * Writes registers ('write multiple registers', 0x10), (re-)connecting first if necessary
+	 * @param unit The unit ID
+	 * @param address The start address
+	 * @param payload The register contents (two bytes per register)
+	 * @throws HeliosException
+	 */
+	public abstract void writeRegisters(int unit, int address, byte[] payload) throws HeliosException;
+
+	/**
+	 * Reads registers ('read holding registers', 0x03) and decodes them, (re-)connecting first if necessary
+	 * @param unit The unit ID
+	 * @param address The start address
+	 * @param count The number of registers
+	 * @param type The Helios data type of the variable
+	 * @param value The value to decode the response into
+	 * @throws HeliosException
+	 */
+	public abstract void readRegisters(int unit, int address, int count, int type, HeliosValue value) throws HeliosException;
+
+	/**
+	 * Reads several variables (select and read each). This implementation runs the transactions strictly one
+	 * after the other, transports supporting pipelining keep several transactions in flight.
+	 * @param unit The unit ID
+	 * @param address The start address
+	 * @param variables The variables
+	 * @param values The values to decode the responses into (one per variable)
+	 * @param errors Receives the error of each variable (<tt>null</tt> if read successfully)
+	 */
+	public synchronized void readVariables(int unit, int address, HeliosVariable[] variables, HeliosValue[] values,
+			HeliosException[] errors) {
+		for (int i = 0; i < variables.length; i++) {
+			try {
+				this.writeRegisters(unit, address, variables[i].getRequestBytes());
+				this.readRegisters(unit, address, variables[i].getCount(), variables[i].getType(), values[i]);
+				errors[i] = null;
+			} catch (HeliosException e) {
+				errors[i] = e;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the device tolerates pipelined transactions. Transports which do not support pipelining
+	 * don't need to do anything.
+	 * @param unit The unit ID
+	 * @param address The start address
+	 * @param variables The variables to be read for the check
+	 */
+	public void probePipelining(int unit, int address, HeliosVariable[] variables) {
+	}
+
+	/**
+	 * Returns the number of variables read in one batch with pipelined transactions
+	 * @return The pipeline depth (1 if pipelining is not used)
+	 */
+	public int getPipelineDepth() {
+		return 1;
+	}
+}
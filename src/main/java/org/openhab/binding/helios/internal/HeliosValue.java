@@ -0,0 +1,363 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.helios.internal;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import com.ghgande.j2mod.modbus.procimg.Register;
+
+/**
+ * This class holds a value read from the Helios modbus. It decodes the device's response ('vXXXXX=value'
+ * padded with 0x00) in place: integer and fixed-point values are parsed straight into an unscaled long and
+ * a scale, only string values are materialized as a <code>String</code>. Instances are mutable and meant to
+ * be reused for every read of a variable.
+ *
+ * @author Bernhard Bauer
+ * @since 1.8.0
+ */
+public class HeliosValue {
+
+	/**
+	 * Maximum number of digits of a numeric value (so the unscaled value fits into a long)
+	 */
+	private static final int MAX_DIGITS = 18;
+
+	/**
+	 * The Helios data type
+	 */
+	private int type;
+
+	/**
+	 * Flag indicating a successfully decoded value
+	 */
+	private boolean valid;
+
+	/**
+	 * The variable number echoed by the device (-1 if the response did not contain one)
+	 */
+	private int variable;
+
+	/**
+	 * The unscaled numeric value
+	 */
+	private long unscaled;
+
+	/**
+	 * The number of digits after the decimal point
+	 */
+	private int scale;
+
+	/**
+	 * The string value (only for {@link HeliosVariable#TYPE_STRING})
+	 */
+	private String text;
+
+	/**
+	 * Buffer collecting the characters of string values
+	 */
+	private byte[] buffer = new byte[64];
+
+	// decoder state
+	private boolean inValue;
+	private boolean negative;
+	private boolean fraction;
+	private int digits;
+	private int length;
+
+	/**
+	 * Decodes the registers received from the Helios device
+	 * @param registers The registers
+	 * @param type The Helios data type of the variable
+	 * @return <tt>true</tt> if a valid value was decoded
+	 */
+	public boolean decode(Register[] registers, int type) {
+		this.begin(type);
+		for (int i = 0; i < registers.length; i++) {
+			int word = registers[i].getValue();
+			if (!this.accept((byte) (word >> 8)) || !this.accept((byte) word)) return this.fail();
+		}
+		return this.end();
+	}
+
+	/**
+	 * Decodes the bytes received from the Helios device
+	 * @param b The bytes
+	 * @param off The offset of the first byte
+	 * @param len The number of bytes
+	 * @param type The Helios data type of the variable
+	 * @return <tt>true</tt> if a valid value was decoded
+	 */
+	public boolean decode(byte[] b, int off, int len, int type) {
+		this.begin(type);
+		for (int i = off; i < off + len; i++) {
+			if (!this.accept(b[i])) return this.fail();
+		}
+		return this.end();
+	}
+
+	/**
+	 * Decodes the bytes received from the Helios device (using absolute gets, the buffer's position is not
+	 * changed)
+	 * @param b The buffer
+	 * @param off The offset of the first byte
+	 * @param len The number of bytes
+	 * @param type The Helios data type of the variable
+	 * @return <tt>true</tt> if a valid value was decoded
+	 */
+	public boolean decode(ByteBuffer b, int off, int len, int type) {
+		this.begin(type);
+		for (int i = off; i < off + len; i++) {
+			if (!this.accept(b.get(i))) return this.fail();
+		}
+		return this.end();
+	}
+
+	/**
+	 * Parses a value in the format used by the Helios device (e.g. a command to be written), using the same
+	 * parser as for responses
+	 * @param text The value without the variable prefix (e.g. '21.5')
+	 * @param type The Helios data type of the variable
+	 * @return <tt>true</tt> if a valid value was parsed
+	 */
+	public boolean parse(String text, int type) {
+		this.begin(type);
+		this.inValue = true;
+		if (type == HeliosVariable.TYPE_STRING) {
+			if (text.length() == 0) return this.fail();
+			this.text = text;
+			this.length = text.length();
+			this.valid = true;
+			return true;
+		}
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if ((c == 0x00) || (c > 0x7F) || !this.accept((byte) c)) return this.fail();
+		}
+		return this.end();
+	}
+
+	/**
+	 * Resets the decoder
+	 */
+	private void begin(int type) {
+		this.type = type;
+		this.valid = false;
+		this.variable = -1;
+		this.unscaled = 0;
+		this.scale = 0;
+		this.text = null;
+		this.inValue = false;
+		this.negative = false;
+		this.fraction = false;
+		this.digits = 0;
+		this.length = 0;
+	}
+
+	/**
+	 * Processes the next byte of the response
+	 * @return <tt>false</tt> if the response is invalid
+	 */
+	private boolean accept(byte b) {
+		if (b == 0x00) return true; // padding
+		if (!this.inValue) {
+			// the part 'vXXXXX=' only identifies the variable
+			if (b == '=') {
+				this.inValue = true;
+			} else if (b == 'v') {
+				this.variable = 0;
+			} else if ((b >= '0') && (b <= '9') && (this.variable >= 0)) {
+				this.variable = this.variable * 10 + (b - '0');
+			}
+			return true;
+		}
+		if (b == '=') return false;
+		if (this.type == HeliosVariable.TYPE_STRING) {
+			if (this.length == this.buffer.length) {
+				byte[] n = new byte[this.buffer.length * 2];
+				System.arraycopy(this.buffer, 0, n, 0, this.length);
+				this.buffer = n;
+			}
+			this.buffer[this.length++] = b;
+			return true;
+		}
+		if ((b >= '0') && (b <= '9')) {
+			if (++this.digits > MAX_DIGITS) return false;
+			this.unscaled = this.unscaled * 10 + (b - '0');
+			if (this.fraction) this.scale++;
+		} else if ((b == '-') && (this.length == 0)) {
+			this.negative = true;
+		} else if ((b == '.') && !this.fraction && (this.digits > 0)) {
+			this.fraction = true;
+		} else {
+			return false;
+		}
+		this.length++;
+		return true;
+	}
+
+	/**
+	 * Completes decoding
+	 */
+	private boolean end() {
+		if (!this.inValue) return this.fail();
+		if (this.type == HeliosVariable.TYPE_STRING) {
+			if (this.length == 0) return this.fail();
+			this.text = new String(this.buffer, 0, this.length);
+		} else {
+			if (this.digits == 0) return this.fail();
+			if (this.negative) this.unscaled = -this.unscaled;
+		}
+		this.valid = true;
+		return true;
+	}
+
+	/**
+	 * Marks the value as invalid
+	 */
+	private boolean fail() {
+		this.valid = false;
+		this.text = null;
+		return false;
+	}
+
+	/**
+	 * Copies another value into this one
+	 * @param v The value to copy
+	 */
+	public void set(HeliosValue v) {
+		this.type = v.type;
+		this.valid = v.valid;
+		this.variable = v.variable;
+		this.unscaled = v.unscaled;
+		this.scale = v.scale;
+		this.text = v.text;
+	}
+
+	/**
+	 * Returns whether a valid value was decoded
+	 * @return <tt>true</tt> if valid
+	 */
+	public boolean isValid() {
+		return this.valid;
+	}
+
+	/**
+	 * Returns the variable number echoed by the device
+	 * @return The variable number (-1 if the response did not contain one)
+	 */
+	public int getVariable() {
+		return this.variable;
+	}
+
+	/**
+	 * Returns the Helios data type
+	 * @return The type
+	 */
+	public int getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns whether the value is numeric (integer or fixed-point)
+	 * @return <tt>true</tt> if numeric
+	 */
+	public boolean isNumeric() {
+		return this.type != HeliosVariable.TYPE_STRING;
+	}
+
+	/**
+	 * Returns the unscaled numeric value
+	 * @return The unscaled value
+	 */
+	public long getUnscaled() {
+		return this.unscaled;
+	}
+
+	/**
+	 * Returns the number of digits after the decimal point
+	 * @return The scale
+	 */
+	public int getScale() {
+		return this.scale;
+	}
+
+	/**
+	 * Returns the numeric value as a double
+	 * @return The value
+	 */
+	public double doubleValue() {
+		double d = this.unscaled;
+		for (int i = 0; i < this.scale; i++) d /= 10;
+		return d;
+	}
+
+	/**
+	 * Returns the numeric value as a BigDecimal
+	 * @return The value
+	 */
+	public BigDecimal toBigDecimal() {
+		return BigDecimal.valueOf(this.unscaled, this.scale);
+	}
+
+	/**
+	 * Compares the numeric value with a fixed-point number
+	 * @param unscaled The unscaled value of the number
+	 * @param scale The number of digits after the decimal point of the number
+	 * @return A negative integer, zero, or a positive integer as this value is less than, equal to, or greater
+	 * than the number
+	 */
+	public int compareTo(long unscaled, int scale) {
+		long a = this.unscaled;
+		int scaleA = this.scale;
+		long b = unscaled;
+		int scaleB = scale;
+		// bring both numbers to the same scale unless this would overflow
+		while ((scaleA < scaleB) && (Math.abs(a) < Long.MAX_VALUE / 10)) {
+			a *= 10;
+			scaleA++;
+		}
+		while ((scaleB < scaleA) && (Math.abs(b) < Long.MAX_VALUE / 10)) {
+			b *= 10;
+			scaleB++;
+		}
+		if (scaleA == scaleB) return a < b ? -1 : (a == b ? 0 : 1);
+		return this.toBigDecimal().compareTo(BigDecimal.valueOf(unscaled, scale));
+	}
+
+	/**
+	 * Returns the length of a string value
+	 * @return The number of characters (0 for numeric values)
+	 */
+	public int length() {
+		return this.text == null ? 0 : this.text.length();
+	}
+
+	/**
+	 * Returns whether this value equals another value
+	 * @param v The other value
+	 * @return <tt>true</tt> if both values are valid and equal
+	 */
+	public boolean sameAs(HeliosValue v) {
+		if (!this.valid || !v.valid || (this.isNumeric() != v.isNumeric())) return false;
+		if (!this.isNumeric()) return this.text.equals(v.text);
+		if (this.scale == v.scale) return this.unscaled == v.unscaled;
+		return this.toBigDecimal().compareTo(v.toBigDecimal()) == 0;
+	}
+
+	/**
+	 * Returns the value in the format used by the Helios device
+	 * @return The value (or <tt>null</tt> if invalid)
+	 */
+	@Override
+	public String toString() {
+		if (!this.valid) return null;
+		return this.isNumeric() ? this.toBigDecimal().toPlainString() : this.text;
+	}
+}
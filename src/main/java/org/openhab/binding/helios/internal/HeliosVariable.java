@@ -1,14 +1,13 @@
 package org.openhab.binding.helios.internal;
 
-import org.openhab.core.types.Type;
-
 /**
- * This class represents a variable of the Helios modbus.
+ * This class represents a variable of the Helios modbus. There is a subclass for each kind of variable
+ * (integer, long, fixed-point and string) holding the kind's bounds as primitives.
  * 
  * @author Bernhard Bauer
  * @since 1.8.0
  */
-public class HeliosVariable implements Comparable<HeliosVariable> {
+public abstract class HeliosVariable implements Comparable<HeliosVariable> {
 	
 	/**
 	 * Read access
@@ -45,98 +44,78 @@ public class HeliosVariable implements Comparable<HeliosVariable> {
 	/**
 	 * The variable number
 	 */
-	private int variable;
+	private final int variable;
 	
 	/**
 	 * The access to the variable
 	 */
-	private int access;
+	private final int access;
 	
 	/**
 	 * The length of the variable (number of chars)
 	 */
-	private int length;
+	private final int length;
 	
 	/**
 	 * The register count for this variable
 	 */
-	private int count;
+	private final int count;
 	
 	/**
 	 * The variable type
 	 */
-	private int type;
+	private final int type;
 	
 	/**
-	 * The minimal value (or null if not applicable)
+	 * The formatted variable string (e.g. 'v00020')
 	 */
-	private Object minVal;
+	private final String variableString;
 	
 	/**
-	 * The maximum value (or null if not applicable)
+	 * The encoded request (register contents) used to select the variable
 	 */
-	private Object maxVal;
+	private final byte[] requestBytes;
 
 	/**
-	 * Contructor to set the member variables 
+	 * Contructor to set the member variables
 	 * @param variable The variable's number
 	 * @param access Access possibilities
 	 * @param length Length
 	 * @param count Count
+	 * @param type The type used to decode the variable's value
 	 */
-	public HeliosVariable(int variable, int access, int length, int count, int type) {
+	protected HeliosVariable(int variable, int access, int length, int count, int type) {
 		this.variable = variable;
 		this.access = access;
 		this.length = length;
 		this.count = count;
 		this.type = type;
-		this.minVal = null;
-		this.maxVal = null;
+		this.variableString = formatVariableString(variable);
+		this.requestBytes = HeliosCommunicator.preparePayload(this.variableString);
 	}
 	
 	/**
-	 * Contructor to set the member variables
-	 * @param variable The variable's number
-	 * @param access Access possibilities
-	 * @param length Length
-	 * @param count Count
-	 * @param minVal Minimum value
-	 * @param maxVal Maximum value
+	 * Checks whether a value is valid for this variable, i.e. whether it is of the variable's kind and
+	 * within its range (if any)
+	 * @param value The value (parsed with the variable's type)
+	 * @return <tt>true</tt> if the value is valid
 	 */
-	public HeliosVariable(int variable, int access, int length, int count, int type, int minVal, int maxVal) {
-		this(variable, access, length, count, type);
-		this.minVal = new Integer(minVal);
-		this.maxVal = new Integer(maxVal);
-	}
+	public abstract boolean accepts(HeliosValue value);
 	
 	/**
-	 * Contructor to set the member variables
-	 * @param variable The variable's number
-	 * @param access Access possibilities
-	 * @param length Length
-	 * @param count Count
-	 * @param minVal Minimum value
-	 * @param maxVal Maximum value
+	 * Returns the minimum value in the format used by the Helios device
+	 * @return The minimum value (or <tt>null</tt> if the variable has no range)
 	 */
-	public HeliosVariable(int variable, int access, int length, int count, int type, int minVal, long maxVal) {
-		this(variable, access, length, count, type);
-		this.minVal = new Integer(minVal);
-		this.maxVal = new Long(maxVal);
+	public String getMinString() {
+		return null;
 	}
 	
 	/**
-	 * Contructor to set the member variables
-	 * @param variable The variable's number
-	 * @param access Access possibilities
-	 * @param length Length
-	 * @param count Count
-	 * @param minVal Minimum value
-	 * @param maxVal Maximum value
+	 * Returns the maximum value in the format used by the Helios device
+	 * @return The maximum value (or <tt>null</tt> if the variable has no range)
 	 */
-	public HeliosVariable(int variable, int access, int length, int count, int type, double minVal, double maxVal) {
-		this(variable, access, length, count, type);
-		this.minVal = new Double(minVal);
-		this.maxVal = new Double(maxVal);
+	public String getMaxString() {
+		return null;
 	}
 	
 	/**
@@ -153,10 +132,30 @@ public class HeliosVariable implements Comparable<HeliosVariable> {
 	 * @return String The string representation for the variable (e.g. 'v00020' for variable number 20)
 	 */
 	public String getVariableString() {
-		String v = Integer.toString(this.variable);
-		while (v.length() < 5) v = '0' + v;
-		v = 'v' + v;
-		return v;
+		return this.variableString;
+	}
+	
+	/**
+	 * Returns the registers to be written to the Helios device in order to select the variable for reading
+	 * 
+	 * @return The encoded variable string (must not be modified)
+	 */
+	public byte[] getRequestBytes() {
+		return this.requestBytes;
+	}
+	
+	/**
+	 * Formats the variable number
+	 * @param variable The variable number
+	 * @return The string representation (e.g. 'v00020' for variable number 20)
+	 */
+	private static String formatVariableString(int variable) {
+		char[] c = new char[] { 'v', '0', '0', '0', '0', '0' };
+		for (int i = c.length - 1; (i > 0) && (variable > 0); i--) {
+			c[i] = (char) ('0' + variable % 10);
+			variable /= 10;
+		}
+		return new String(c);
 	}
 	
 	/**
@@ -190,22 +189,6 @@ public class HeliosVariable implements Comparable<HeliosVariable> {
 		return this.type;
 	}
 	
-	/**
-	 * Getter for minimum value
-	 * @return minimum value
-	 */
-	public Object getMinVal() {
-		return this.minVal;
-	}
-	
-	/**
-	 * Getter for maximum value
-	 * @return maximum value
-	 */
-	public Object getMaxVal() {
-		return this.maxVal;
-	}
-	
 	public int compareTo(HeliosVariable v) {
 		if (this.getVariable() < v.getVariable()) return -1;
 		else if (this.getVariable() == v.getVariable()) return 0;
@@ -1,198 +1,333 @@
 package org.openhab.binding.helios.internal;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.LinkedList;
 import java.util.LinkedHashMap;
 import java.util.Iterator;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.openhab.core.library.types.DecimalType;
-import org.openhab.core.library.types.StringType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * This class represents a the possible variables of the Helios modbus.
+ * This class represents a the possible variables of the Helios modbus. The catalog is loaded from a data
+ * resource bundled with the binding (<tt>catalog/default.csv</tt>), firmware revisions with a different set
+ * of variables can provide their own catalog. Each catalog is immutable and loaded only once, use
+ * {@link #getInstance()} or {@link #getInstance(String)} to access it.
  * 
  * @author Bernhard Bauer
  * @since 1.8.0
  */
 public class HeliosVariableMap {
 
+	private static final Logger logger = LoggerFactory.getLogger(HeliosVariableMap.class);
+
 	/**
-	 * The map holding the variable meta info
+	 * The map holding the variable meta info (unmodifiable)
 	 */
-	private Map<String, HeliosVariable> vMap;
+	private final Map<String, HeliosVariable> vMap;
 	
 	/**
-	 * Constructor to generate the variable map
+	 * The variables indexed by their variable number (<tt>null</tt> for unused numbers)
 	 */
-	public HeliosVariableMap() {
-		String[] descriptions;
-		this.vMap = new HashMap<String, HeliosVariable>();
-		
-		this.vMap.put("article_description", new HeliosVariable(0, HeliosVariable.ACCESS_RW, 31, 20, HeliosVariable.TYPE_STRING));
-		this.vMap.put("ref_no", new HeliosVariable(1, HeliosVariable.ACCESS_RW, 16, 12, HeliosVariable.TYPE_STRING));
-		this.vMap.put("mac_address", new HeliosVariable(2, HeliosVariable.ACCESS_R, 18, 13, HeliosVariable.TYPE_STRING));
-		this.vMap.put("language", new HeliosVariable(3, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_STRING));
-		this.vMap.put("date", new HeliosVariable(4, HeliosVariable.ACCESS_RW, 10, 9, HeliosVariable.TYPE_STRING));
-		this.vMap.put("time", new HeliosVariable(5, HeliosVariable.ACCESS_RW, 10, 9, HeliosVariable.TYPE_STRING));
-		this.vMap.put("summer_winter", new HeliosVariable(6, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER));
-		this.vMap.put("auto_sw_update", new HeliosVariable(7, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER));
-		this.vMap.put("access_helios_portal", new HeliosVariable(8, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER));
-		
-		descriptions = new String[] {
-				"volt_fan_s1_ea",
-				"volt_fan_s1_sa",
-				"volt_fan_s2_ea",
-				"volt_fan_s2_sa",
-				"volt_fan_s3_ea",
-				"volt_fan_s3_sa",
-				"volt_fan_s4_ea",
-				"volt_fan_s4_sa"
-		};
-		for (int i = 12; i <= 19; i++) this.vMap.put(descriptions[i - 12], new HeliosVariable(i, HeliosVariable.ACCESS_RW, 3, 6, HeliosVariable.TYPE_FLOAT, 1.6, 10.0));
-		
-		this.vMap.put("min_fan_stage", new HeliosVariable(20, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		this.vMap.put("kwl_be", new HeliosVariable(21, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		this.vMap.put("kwl_bec", new HeliosVariable(22, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		this.vMap.put("unit_config", new HeliosVariable(23, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		this.vMap.put("pre-heater_status", new HeliosVariable(24, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		
-		for (int i = 25; i <= 32; i++) this.vMap.put("kwl_ftf_config" + (i - 25), new HeliosVariable(i, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 3));
-		
-		this.vMap.put("humidity_control_status", new HeliosVariable(33, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 2));
-		this.vMap.put("humidity_control_set_value", new HeliosVariable(34, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_INTEGER, 20, 80));
-		this.vMap.put("humidity_control_steps", new HeliosVariable(35, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_INTEGER, 5, 20));
-		this.vMap.put("humidity_control_stop_time", new HeliosVariable(36, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_INTEGER, 0, 24));
-		
-		this.vMap.put("co2_control_status", new HeliosVariable(37, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 2));
-		this.vMap.put("co2_control_set_value", new HeliosVariable(38, HeliosVariable.ACCESS_RW, 4, 6, HeliosVariable.TYPE_INTEGER, 300, 2000));
-		this.vMap.put("co2_control_steps", new HeliosVariable(39, HeliosVariable.ACCESS_RW, 3, 6, HeliosVariable.TYPE_INTEGER, 50, 400));
-		
-		this.vMap.put("voc_control_status", new HeliosVariable(40, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 2));
-		this.vMap.put("voc_control_set_value", new HeliosVariable(41, HeliosVariable.ACCESS_RW, 4, 6, HeliosVariable.TYPE_INTEGER, 300, 2000));
-		this.vMap.put("voc_control_steps", new HeliosVariable(42, HeliosVariable.ACCESS_RW, 3, 6, HeliosVariable.TYPE_INTEGER, 50, 400));
-		
-		this.vMap.put("comfort_temp", new HeliosVariable(43, HeliosVariable.ACCESS_RW, 4, 6, HeliosVariable.TYPE_INTEGER, 10, 25));
-		
-		this.vMap.put("time_zone_diff_to_gmt", new HeliosVariable(51, HeliosVariable.ACCESS_RW, 3, 6, HeliosVariable.TYPE_INTEGER, -12, 14));
-		this.vMap.put("date_format", new HeliosVariable(52, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 2));
-		
-		this.vMap.put("heat_exchanger_type", new HeliosVariable(53, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 3));
-		
-		this.vMap.put("party-mode_duration", new HeliosVariable(91, HeliosVariable.ACCESS_RW, 3, 6, HeliosVariable.TYPE_INTEGER, 5, 180));
-		this.vMap.put("party-mode_fan_stage", new HeliosVariable(92, HeliosVariable.ACCESS_RW, 3, 5, HeliosVariable.TYPE_INTEGER, 0, 4));
-		this.vMap.put("party-mode_remaining_time", new HeliosVariable(93, HeliosVariable.ACCESS_R, 3, 6, HeliosVariable.TYPE_INTEGER, 0, 180));
-		this.vMap.put("party-mode", new HeliosVariable(94, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		
-		this.vMap.put("standby-mode_duration", new HeliosVariable(96, HeliosVariable.ACCESS_RW, 3, 6, HeliosVariable.TYPE_INTEGER, 5, 180));
-		this.vMap.put("standby-mode_fan_stage", new HeliosVariable(97, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 4));
-		this.vMap.put("standby-mode_remaining_time", new HeliosVariable(98, HeliosVariable.ACCESS_R, 3, 6, HeliosVariable.TYPE_INTEGER, 0, 180));
-		this.vMap.put("standby-mode", new HeliosVariable(99, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		
-		this.vMap.put("operating_mode", new HeliosVariable(101, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		this.vMap.put("fan_stage", new HeliosVariable(102, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 4));
-		this.vMap.put("percentage_fan_stage", new HeliosVariable(103, HeliosVariable.ACCESS_R, 3, 6, HeliosVariable.TYPE_INTEGER, 0, 100));
-		
-		this.vMap.put("temperature_outside_air", new HeliosVariable(104, HeliosVariable.ACCESS_R, 7, 8, HeliosVariable.TYPE_INTEGER, -27, 9998));
-		this.vMap.put("temperature_supply_air", new HeliosVariable(105, HeliosVariable.ACCESS_R, 7, 8, HeliosVariable.TYPE_INTEGER, -27, 9998));
-		this.vMap.put("temperature_outgoing_air", new HeliosVariable(106, HeliosVariable.ACCESS_R, 7, 8, HeliosVariable.TYPE_INTEGER, -27, 9998));
-		this.vMap.put("temperature_extract_air", new HeliosVariable(107, HeliosVariable.ACCESS_R, 7, 8, HeliosVariable.TYPE_INTEGER, -27, 9998));
-		
-		this.vMap.put("vhz_duct_sensor", new HeliosVariable(108, HeliosVariable.ACCESS_R, 7, 8, HeliosVariable.TYPE_INTEGER, -27, 9998));
-		this.vMap.put("nhz_return_sensor", new HeliosVariable(110, HeliosVariable.ACCESS_R, 7, 8, HeliosVariable.TYPE_INTEGER, -27, 9998));
-		
-		for (int i = 111; i <= 118; i++) this.vMap.put("ext_sensor_kwl-ftf_humid_" + (i - 110), new HeliosVariable(i, HeliosVariable.ACCESS_R, 4, 6, HeliosVariable.TYPE_INTEGER, 0, 9998));
-		for (int i = 119; i <= 126; i++) this.vMap.put("ext_sensor_kwl-ftf_temp_" + (i - 118), new HeliosVariable(i, HeliosVariable.ACCESS_R, 7, 8, HeliosVariable.TYPE_INTEGER, -27, 9998));
-		for (int i = 128; i <= 135; i++) this.vMap.put("ext_sensor_kwl-co2_" + (i - 127), new HeliosVariable(i, HeliosVariable.ACCESS_R, 4, 6, HeliosVariable.TYPE_INTEGER, 0, 9998));
-		for (int i = 136; i <= 143; i++) this.vMap.put("ext_sensor_kwl-voc_" + (i - 135), new HeliosVariable(i, HeliosVariable.ACCESS_R, 4, 6, HeliosVariable.TYPE_INTEGER, 0, 9998));
-		
-		this.vMap.put("nhz_duct_sensor", new HeliosVariable(146, HeliosVariable.ACCESS_R, 7, 8, HeliosVariable.TYPE_INTEGER, -27, 9998));
-		this.vMap.put("week_profile_nhz", new HeliosVariable(201, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 6));
-		
-		this.vMap.put("ser_no", new HeliosVariable(303, HeliosVariable.ACCESS_RW, 16, 12, HeliosVariable.TYPE_STRING));
-		this.vMap.put("prod_code", new HeliosVariable(304, HeliosVariable.ACCESS_RW, 13, 11, HeliosVariable.TYPE_STRING));
-		
-		this.vMap.put("supply_air_rpm", new HeliosVariable(348, HeliosVariable.ACCESS_R, 4, 6, HeliosVariable.TYPE_INTEGER, 0, 9999));
-		this.vMap.put("extract_air_rpm", new HeliosVariable(349, HeliosVariable.ACCESS_R, 4, 6, HeliosVariable.TYPE_INTEGER, 0, 9999));
-		this.vMap.put("logout", new HeliosVariable(403, HeliosVariable.ACCESS_W, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 1));
-		
-		this.vMap.put("holiday_programme", new HeliosVariable(601, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 2));
-		this.vMap.put("holiday_programme_fan_stage", new HeliosVariable(602, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 4));
-		this.vMap.put("holiday_programme_start", new HeliosVariable(603, HeliosVariable.ACCESS_RW, 10, 9, HeliosVariable.TYPE_STRING));
-		this.vMap.put("holiday_programme_end", new HeliosVariable(604, HeliosVariable.ACCESS_RW, 10, 9, HeliosVariable.TYPE_STRING));
-		this.vMap.put("holiday_programme_interval", new HeliosVariable(605, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_INTEGER, 1, 24));
-		this.vMap.put("holiday_programme_activation_time", new HeliosVariable(606, HeliosVariable.ACCESS_RW, 3, 6, HeliosVariable.TYPE_INTEGER, 5, 300));
-		
-		this.vMap.put("vhz_type", new HeliosVariable(1010, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 4));
-		this.vMap.put("function_type_kwl-em", new HeliosVariable(1017, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 2));
-		this.vMap.put("run-on_time_vhz_nhz", new HeliosVariable(1019, HeliosVariable.ACCESS_RW, 3, 6, HeliosVariable.TYPE_INTEGER, 60, 120));
-		
-		this.vMap.put("external_contact", new HeliosVariable(1020, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 6));
-		this.vMap.put("error_output_function", new HeliosVariable(1021, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 2));
-		
-		this.vMap.put("filter_change", new HeliosVariable(1031, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		this.vMap.put("filter_change_interval", new HeliosVariable(1032, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_INTEGER, 0, 12));
-		this.vMap.put("filter_change_remaining_time", new HeliosVariable(1033, HeliosVariable.ACCESS_R, 10, 9, HeliosVariable.TYPE_INTEGER, 2, 4294967295L));
-		
-		this.vMap.put("bypass_room_temp", new HeliosVariable(1035, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_INTEGER, 10, 40));
-		this.vMap.put("bypass_min_outside_temp", new HeliosVariable(1036, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_INTEGER, 5, 20));
-		
-		this.vMap.put("factory_setting_wzu", new HeliosVariable(1037, HeliosVariable.ACCESS_RW, 2, 5, HeliosVariable.TYPE_INTEGER, 3, 10));
-		this.vMap.put("factory_reset", new HeliosVariable(1041, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 1));
-		
-		this.vMap.put("supply_air_fan_stage", new HeliosVariable(1050, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 4));
-		this.vMap.put("extract_air_fan_stage", new HeliosVariable(1051, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 4));
-		
-		int stage = 0;
-		for (int i = 1061; i <= 1065; i++) {
-			this.vMap.put("fan_stages_stepped_range" + stage + "-" + (stage + 2), new HeliosVariable(i, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 2)); // range for values might be different - there seems to be a mistake in the Helios document
-			stage = stage + 2; 
+	private final HeliosVariable[] byNumber;
+	
+	/**
+	 * The variable names indexed by their variable number (<tt>null</tt> for unused numbers)
+	 */
+	private final String[] namesByNumber;
+	
+	/**
+	 * The static variables (identity information which does not change while the device is running)
+	 */
+	private final Set<String> staticVariables;
+	
+	/**
+	 * The expressions of the virtual variables, indexed by variable name (unmodifiable)
+	 */
+	private final Map<String, HeliosExpression> virtualVariables;
+	
+	/**
+	 * The variables changed by writing a variable, indexed by the name of the written variable (unmodifiable)
+	 */
+	private final Map<String, String[]> dependents;
+	
+	/**
+	 * Result of {@link #getDependents(String)} for variables without dependents
+	 */
+	private static final String[] NO_DEPENDENTS = new String[0];
+	
+	/**
+	 * The name of the default catalog
+	 */
+	public static final String DEFAULT_CATALOG = "default";
+	
+	/**
+	 * The location of the catalog resources (relative to this class)
+	 */
+	private static final String CATALOG_PATH = "catalog/";
+	
+	/**
+	 * The number of columns of a catalog line
+	 */
+	private static final int COLUMNS = 9;
+	
+	/**
+	 * The catalogs of specific firmware revisions which have been loaded, indexed by catalog name
+	 */
+	private static final ConcurrentMap<String, HeliosVariableMap> catalogs = new ConcurrentHashMap<String, HeliosVariableMap>();
+	
+	/**
+	 * Lazily initialized holder of the single instance
+	 */
+	private static class InstanceHolder {
+		private static final HeliosVariableMap INSTANCE = new HeliosVariableMap();
+	}
+	
+	/**
+	 * Returns the variable catalog
+	 * @return The (shared) variable map
+	 */
+	public static HeliosVariableMap getInstance() {
+		return InstanceHolder.INSTANCE;
+	}
+	
+	/**
+	 * Returns the variable catalog of a firmware revision, the catalog is loaded once from the resource
+	 * <tt>catalog/&lt;firmware&gt;.csv</tt>
+	 * @param firmware The catalog name (<tt>null</tt> or empty for the default catalog)
+	 * @return The (shared) variable map
+	 * @throws IllegalArgumentException If there is no such catalog or it is invalid
+	 */
+	public static HeliosVariableMap getInstance(String firmware) throws IllegalArgumentException {
+		if ((firmware == null) || firmware.isEmpty() || firmware.equals(DEFAULT_CATALOG)) {
+			return getInstance();
+		}
+		HeliosVariableMap map = catalogs.get(firmware);
+		if (map == null) {
+			map = new HeliosVariableMap(firmware);
+			HeliosVariableMap existing = catalogs.putIfAbsent(firmware, map);
+			if (existing != null) map = existing;
+		}
+		return map;
+	}
+	
+	/**
+	 * Constructor to load the default catalog (package-private for benchmarks, use {@link #getInstance()})
+	 */
+	HeliosVariableMap() {
+		this(DEFAULT_CATALOG);
+	}
+	
+	/**
+	 * Constructor to load a catalog (package-private for benchmarks, use {@link #getInstance(String)})
+	 * <p>
+	 * A catalog is a comma separated file with the columns <tt>name,variable,access,length,count,kind,min,max,flags</tt>
+	 * where access is one of <tt>R</tt>, <tt>W</tt>, <tt>RW</tt>, kind is one of <tt>integer</tt>, <tt>long</tt>,
+	 * <tt>fixed</tt>, <tt>string</tt> and the only flag is <tt>static</tt>. Empty lines and lines starting with
+	 * <tt>#</tt> are ignored, so is the header line.
+	 * <p>
+	 * Virtual variables are defined by the optional properties file <tt>&lt;catalog&gt;.expressions</tt>, each
+	 * property maps the name of a virtual variable to an expression over the numeric variables of the catalog
+	 * (see {@link HeliosExpression}). The optional properties file <tt>&lt;catalog&gt;.dependencies</tt> maps
+	 * writable variables to the (comma separated) variables which change as a consequence of writing them.
+	 * @param catalog The catalog name
+	 * @throws IllegalArgumentException If there is no such catalog or it is invalid
+	 */
+	HeliosVariableMap(String catalog) throws IllegalArgumentException {
+		InputStream in = HeliosVariableMap.class.getResourceAsStream(CATALOG_PATH + catalog + ".csv");
+		if (in == null) {
+			throw new IllegalArgumentException("Unknown Helios variable catalog '" + catalog + "'");
 		}
 		
-		this.vMap.put("offset_extract_air", new HeliosVariable(1066, HeliosVariable.ACCESS_RW, 10, 9, HeliosVariable.TYPE_FLOAT));
-		this.vMap.put("fan_stages_stepped_vs_1-10v", new HeliosVariable(1068, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
-		
-		for (int i = 1071; i <= 1078; i++) this.vMap.put("sensor_name_humidity+temp" + (i - 1070), new HeliosVariable(i, HeliosVariable.ACCESS_RW, 15, 12, HeliosVariable.TYPE_STRING));
-		for (int i = 1081; i <= 1088; i++) this.vMap.put("sensor_name_co2" + (i - 1080), new HeliosVariable(i, HeliosVariable.ACCESS_RW, 15, 12, HeliosVariable.TYPE_STRING));
-		for (int i = 1091; i <= 1098; i++) this.vMap.put("sensor_name_voc" + (i - 1090), new HeliosVariable(i, HeliosVariable.ACCESS_RW, 15, 12, HeliosVariable.TYPE_STRING));
-		
-		this.vMap.put("sw_version", new HeliosVariable(1101, HeliosVariable.ACCESS_R, 5, 7, HeliosVariable.TYPE_FLOAT, 0, 99.99));
-		
-		descriptions = new String[] {
-				"operating_hours_supply_air_vent",
-				"operating_hours_extract_air_vent",
-				"operating_hours_vhz",
-				"operating_hours_nhz"
-		};
-		for (int i = 1103; i <= 1106; i++) this.vMap.put(descriptions[i - 1103], new HeliosVariable(i, HeliosVariable.ACCESS_R, 10, 9, HeliosVariable.TYPE_INTEGER, 0, 4294967295L));
-		
-		descriptions = new String[] {
-				"output_power_vhz_percent",
-				"output_power_nhz_percent"
-		};
-		for (int i = 1108; i <= 1109; i++) this.vMap.put(descriptions[i - 1108], new HeliosVariable(i, HeliosVariable.ACCESS_R, 10, 9, HeliosVariable.TYPE_INTEGER, 0, 4294967295L));
-
-		// TODO: codings?
-		this.vMap.put("reset_flag", new HeliosVariable(1120, HeliosVariable.ACCESS_R, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 1));
-		this.vMap.put("errors", new HeliosVariable(1123, HeliosVariable.ACCESS_R, 10, 9, HeliosVariable.TYPE_INTEGER, 0, 4294967295L));
-		this.vMap.put("warnings", new HeliosVariable(1124, HeliosVariable.ACCESS_R, 3, 6, HeliosVariable.TYPE_INTEGER, 0, 255));
-		this.vMap.put("infos", new HeliosVariable(1125, HeliosVariable.ACCESS_R, 3, 6, HeliosVariable.TYPE_INTEGER, 0, 255));
-		this.vMap.put("number_of_errors", new HeliosVariable(1300, HeliosVariable.ACCESS_R, 2, 5, HeliosVariable.TYPE_INTEGER, 0, 32));
-		this.vMap.put("number_of_warnings", new HeliosVariable(1301, HeliosVariable.ACCESS_R, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 8));
-		this.vMap.put("number_of_infos", new HeliosVariable(1302, HeliosVariable.ACCESS_R, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 8));
-		this.vMap.put("errors_string", new HeliosVariable(1303, HeliosVariable.ACCESS_R, 32, 20, HeliosVariable.TYPE_STRING));
-		this.vMap.put("warnings_string", new HeliosVariable(1304, HeliosVariable.ACCESS_R, 8, 8, HeliosVariable.TYPE_STRING));
-		this.vMap.put("infos_string", new HeliosVariable(1305, HeliosVariable.ACCESS_R, 8, 8, HeliosVariable.TYPE_STRING));
-		this.vMap.put("status_flags", new HeliosVariable(1306, HeliosVariable.ACCESS_R, 32, 20, HeliosVariable.TYPE_STRING));
-		
-		for (int i = 2020; i <= 2027; i++) this.vMap.put("kw_ftf_config" + (i - 2019), new HeliosVariable(i, HeliosVariable.ACCESS_R, 1, 5, HeliosVariable.TYPE_INTEGER, 0, 1));
+		List<String> names = new ArrayList<String>(256);
+		List<HeliosVariable> variables = new ArrayList<HeliosVariable>(256);
+		Set<String> staticVariables = new HashSet<String>();
+		int lineNo = 0;
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					lineNo++;
+					line = line.trim();
+					if (line.isEmpty() || line.startsWith("#") || line.startsWith("name,")) continue;
+					String[] cols = line.split(",", -1);
+					if (cols.length != COLUMNS) {
+						throw new IllegalArgumentException("Expected " + COLUMNS + " columns");
+					}
+					names.add(cols[0]);
+					variables.add(HeliosVariableMap.parseVariable(cols));
+					if (cols[8].equals("static")) staticVariables.add(cols[0]);
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot read Helios variable catalog '" + catalog + "'", e);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid Helios variable catalog '" + catalog + "' (line " + lineNo
+					+ "): " + e.getMessage(), e);
+		}
 		
-		this.vMap.put("global_manual_web-update", new HeliosVariable(2013, HeliosVariable.ACCESS_RW, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 1));
-		this.vMap.put("portal_latest_error", new HeliosVariable(2014, HeliosVariable.ACCESS_R, 3, 6, HeliosVariable.TYPE_INTEGER, 1, 255));
-		this.vMap.put("clear_error", new HeliosVariable(2015, HeliosVariable.ACCESS_W, 1, 5, HeliosVariable.TYPE_INTEGER, 1, 1));		
+		// build the indexes, sized to the catalog
+		Map<String, HeliosVariable> vMap = new HashMap<String, HeliosVariable>(names.size() * 4 / 3 + 1);
+		int max = 0;
+		for (HeliosVariable v : variables) max = Math.max(max, v.getVariable());
+		this.byNumber = new HeliosVariable[max + 1];
+		this.namesByNumber = new String[max + 1];
+		for (int i = 0; i < names.size(); i++) {
+			HeliosVariable v = variables.get(i);
+			if (vMap.put(names.get(i), v) != null) {
+				throw new IllegalArgumentException("Duplicate variable '" + names.get(i) + "' in Helios variable catalog '"
+						+ catalog + "'");
+			}
+			this.byNumber[v.getVariable()] = v;
+			this.namesByNumber[v.getVariable()] = names.get(i);
+		}
+		this.vMap = Collections.unmodifiableMap(vMap);
+		this.staticVariables = Collections.unmodifiableSet(staticVariables);
+		this.virtualVariables = Collections.unmodifiableMap(this.loadVirtualVariables(catalog));
+		this.dependents = Collections.unmodifiableMap(this.loadDependents(catalog));
+	}
+	
+	/**
+	 * Loads a properties file of a catalog
+	 * @param catalog The catalog name
+	 * @param extension The file extension
+	 * @return The properties (empty if the catalog has no such file)
+	 * @throws IllegalArgumentException If the file cannot be read
+	 */
+	private static Properties loadProperties(String catalog, String extension) throws IllegalArgumentException {
+		Properties properties = new Properties();
+		InputStream in = HeliosVariableMap.class.getResourceAsStream(CATALOG_PATH + catalog + extension);
+		if (in == null) return properties;
+		try {
+			try {
+				properties.load(new InputStreamReader(in, "UTF-8"));
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Cannot read '" + catalog + extension + "' of the Helios variable catalog", e);
+		}
+		return properties;
+	}
+	
+	/**
+	 * Loads the dependencies of a catalog
+	 * @param catalog The catalog name
+	 * @return The dependent variables, indexed by the name of the written variable
+	 * @throws IllegalArgumentException If a dependency refers to an unknown variable
+	 */
+	private Map<String, String[]> loadDependents(String catalog) throws IllegalArgumentException {
+		Map<String, String[]> dependents = new HashMap<String, String[]>();
+		Properties properties = loadProperties(catalog, ".dependencies");
+		for (String name : properties.stringPropertyNames()) {
+			HeliosVariable v = this.vMap.get(name);
+			if ((v == null) || (v.getAccess() == HeliosVariable.ACCESS_R)) {
+				throw new IllegalArgumentException("Invalid dependency in Helios variable catalog '" + catalog + "': '"
+						+ name + "' is not a writable variable");
+			}
+			String[] names = properties.getProperty(name).split(",");
+			for (int i = 0; i < names.length; i++) {
+				names[i] = names[i].trim();
+				HeliosVariable d = this.vMap.get(names[i]);
+				if ((d == null) || (d.getAccess() == HeliosVariable.ACCESS_W)) {
+					throw new IllegalArgumentException("Invalid dependency of '" + name + "' in Helios variable catalog '"
+							+ catalog + "': '" + names[i] + "' is not a readable variable");
+				}
+			}
+			dependents.put(name, names);
+		}
+		return dependents;
+	}
+	
+	/**
+	 * Loads and compiles the virtual variables of a catalog - invalid expressions are logged and skipped, so
+	 * they don't prevent the catalog from being loaded
+	 * @param catalog The catalog name
+	 * @return The expressions, indexed by variable name
+	 * @throws IllegalArgumentException If the expressions cannot be read
+	 */
+	private Map<String, HeliosExpression> loadVirtualVariables(String catalog) throws IllegalArgumentException {
+		Map<String, HeliosExpression> expressions = new HashMap<String, HeliosExpression>();
+		Properties properties = loadProperties(catalog, ".expressions");
+		for (String name : properties.stringPropertyNames()) {
+			try {
+				if (this.vMap.containsKey(name)) {
+					throw new IllegalArgumentException("the name is already used by a variable");
+				}
+				HeliosExpression expression = new HeliosExpression(properties.getProperty(name));
+				for (String input : expression.getInputs()) {
+					HeliosVariable v = this.vMap.get(input);
+					if (v == null) {
+						throw new IllegalArgumentException("unknown variable '" + input
+								+ "' (names containing '-' or '+' have to be quoted)");
+					}
+					if (v.getType() == HeliosVariable.TYPE_STRING) {
+						throw new IllegalArgumentException("'" + input + "' is not a numeric variable");
+					}
+				}
+				expressions.put(name, expression);
+			} catch (IllegalArgumentException e) {
+				logger.warn("Ignoring invalid virtual variable '{}' in Helios variable catalog '{}': {}", name, catalog,
+						e.getMessage());
+			}
+		}
+		return expressions;
+	}
+	
+	/**
+	 * Creates a variable from the columns of a catalog line
+	 * @param cols The columns
+	 * @return The variable
+	 * @throws IllegalArgumentException If the line is invalid
+	 */
+	private static HeliosVariable parseVariable(String[] cols) throws IllegalArgumentException {
+		int variable = Integer.parseInt(cols[1]);
+		int length = Integer.parseInt(cols[3]);
+		int count = Integer.parseInt(cols[4]);
+		int access;
+		if (cols[2].equals("R")) {
+			access = HeliosVariable.ACCESS_R;
+		} else if (cols[2].equals("W")) {
+			access = HeliosVariable.ACCESS_W;
+		} else if (cols[2].equals("RW")) {
+			access = HeliosVariable.ACCESS_RW;
+		} else {
+			throw new IllegalArgumentException("Unknown access '" + cols[2] + "'");
+		}
+		boolean bounded = !cols[6].isEmpty() || !cols[7].isEmpty();
+		if (cols[5].equals("integer")) {
+			return bounded
+					? new HeliosIntegerVariable(variable, access, length, count, Integer.parseInt(cols[6]), Integer.parseInt(cols[7]))
+					: new HeliosIntegerVariable(variable, access, length, count);
+		} else if (cols[5].equals("long")) {
+			return bounded
+					? new HeliosLongVariable(variable, access, length, count, Long.parseLong(cols[6]), Long.parseLong(cols[7]))
+					: new HeliosLongVariable(variable, access, length, count, Long.MIN_VALUE, Long.MAX_VALUE);
+		} else if (cols[5].equals("fixed")) {
+			return bounded
+					? new HeliosFixedPointVariable(variable, access, length, count, Double.parseDouble(cols[6]), Double.parseDouble(cols[7]))
+					: new HeliosFixedPointVariable(variable, access, length, count);
+		} else if (cols[5].equals("string")) {
+			return new HeliosStringVariable(variable, access, length, count);
+		}
+		throw new IllegalArgumentException("Unknown kind '" + cols[5] + "'");
 	}
 	
 	/**
@@ -204,6 +339,77 @@ public class HeliosVariableMap {
 		return this.vMap.get(variableName);
 	}
 	
+	/**
+	 * Returns the variable
+	 * @param variable Variable number
+	 * @return The variable or <tt>null</tt> if there is no variable with this number
+	 */
+	public HeliosVariable getVariable(int variable) {
+		return (variable >= 0) && (variable < this.byNumber.length) ? this.byNumber[variable] : null;
+	}
+	
+	/**
+	 * Returns the name of a variable
+	 * @param variable Variable number
+	 * @return The variable name or <tt>null</tt> if there is no variable with this number
+	 */
+	public String getName(int variable) {
+		return (variable >= 0) && (variable < this.namesByNumber.length) ? this.namesByNumber[variable] : null;
+	}
+	
+	/**
+	 * Returns whether the variable is static, i.e. only needs to be read once
+	 * @param variableName Variable name
+	 * @return <tt>true</tt> if the variable doesn't change while the device is running
+	 */
+	public boolean isStatic(String variableName) {
+		return this.staticVariables.contains(variableName);
+	}
+	
+	/**
+	 * Returns the expression of a virtual variable, i.e. a variable computed from other variables
+	 * @param variableName Variable name
+	 * @return The expression or <tt>null</tt> if there is no virtual variable with this name
+	 */
+	public HeliosExpression getExpression(String variableName) {
+		return this.virtualVariables.get(variableName);
+	}
+	
+	/**
+	 * Returns the variables which change as a consequence of writing a variable
+	 * @param variableName Variable name
+	 * @return The names of the dependent variables (empty if none, must not be modified)
+	 */
+	public String[] getDependents(String variableName) {
+		String[] names = this.dependents.get(variableName);
+		return names == null ? NO_DEPENDENTS : names;
+	}
+	
+	/**
+	 * Returns whether there is a (real or virtual) variable with this name
+	 * @param variableName Variable name
+	 * @return <tt>true</tt> if items can be bound to the variable
+	 */
+	public boolean isKnown(String variableName) {
+		return this.vMap.containsKey(variableName) || this.virtualVariables.containsKey(variableName);
+	}
+	
+	/**
+	 * Returns the names of the virtual variables
+	 * @return The (unmodifiable) set of virtual variable names
+	 */
+	public Set<String> getVirtualNames() {
+		return this.virtualVariables.keySet();
+	}
+	
+	/**
+	 * Returns all variable names (without the virtual variables)
+	 * @return The (unmodifiable) set of variable names
+	 */
+	public Set<String> getNames() {
+		return this.vMap.keySet();
+	}
+	
 	private Map getSortedMap()
 	{
 		List list = new LinkedList(this.vMap.entrySet());
@@ -269,10 +475,22 @@ public class HeliosVariableMap {
 			// Variable
 			html += "<td>" + v.getVariableString() + "</td>";
 			// Min Value
-			html += "<td>" + (v.getMinVal() == null ? "-" : v.getMinVal()) + "</td>";
+			html += "<td>" + (v.getMinString() == null ? "-" : v.getMinString()) + "</td>";
 			// Max Value
-			html += "<td>" + (v.getMaxVal() == null ? "-" : v.getMaxVal()) + "</td>";
+			html += "<td>" + (v.getMaxString() == null ? "-" : v.getMaxString()) + "</td>";
+			html += "</tr>";
+		}
+		for (Map.Entry<String, HeliosExpression> e : this.virtualVariables.entrySet()) {
+			html += "<tr class=\"" + (i % 2 == 0 ? "even" : "odd") + "\">";
+			html += "<td>" + e.getKey() + "</td>";
+			html += "<td>R</td>";
+			html += "<td>Virtual</td>";
+			html += "<td>-</td>";
+			html += "<td>" + e.getValue() + "</td>";
+			html += "<td>-</td>";
+			html += "<td>-</td>";
 			html += "</tr>";
+			i++;
 		}
 		html += "</table>";
 		return html;